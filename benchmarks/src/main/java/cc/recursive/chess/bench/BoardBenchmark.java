@@ -0,0 +1,137 @@
+package cc.recursive.chess.bench;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cc.recursive.chess.Board;
+import cc.recursive.chess.Constants;
+import cc.recursive.chess.Move;
+import cc.recursive.chess.MoveList;
+
+// Throughput of the Board operations used on every referee turn.
+// Each invocation works on the next position of the corpus so results average over the whole corpus.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+    @Param({ Positions.Perft, Positions.Chess960, Positions.CrazyHouse })
+    public String corpus;
+
+    private String[] fens;
+    private boolean crazyHouse;
+    // Boards must not memoize their legal moves, which copies would inherit:
+    // benchmarks going through getLegalMoves work on a fresh copy so that each invocation generates them again.
+    private Board[] boards;
+    // One legal move per position, picked in the middle of the generated list.
+    private int[] moves;
+    private Move[] objectMoves;
+    private MoveList moveList = new MoveList();
+    private char[] fenBuffer = new char[Constants.MaxFenLength];
+    private int index = 0;
+
+    @Setup
+    public void setup() throws ParseException {
+        List<Positions.Position> positions = Positions.get(corpus);
+        fens = new String[positions.size()];
+        boards = new Board[positions.size()];
+        moves = new int[positions.size()];
+        objectMoves = new Move[positions.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            Positions.Position position = positions.get(i);
+            fens[i] = position.fen;
+            crazyHouse = position.crazyHouse;
+            boards[i] = position.createBoard();
+            boards[i].generateMoves(moveList);
+            moves[i] = moveList.get(moveList.size() / 2);
+            objectMoves[i] = moveList.toMoves().get(moveList.size() / 2);
+        }
+    }
+
+    private int next() {
+        int result = index;
+        index = index + 1 == boards.length ? 0 : index + 1;
+        return result;
+    }
+
+    @Benchmark
+    public int generateMoves() {
+        boards[next()].generateMoves(moveList);
+        return moveList.size();
+    }
+
+    // Works on a copy since the fallback to getLegalMoves memoizes, so the early exit is measured on every invocation.
+    // Includes the board copy, see copyBoard for its cost alone.
+    @Benchmark
+    public boolean hasAnyLegalMove() {
+        return new Board(boards[next()]).hasAnyLegalMove();
+    }
+
+    // Includes the board copy, see copyBoard for its cost alone.
+    @Benchmark
+    public List<Move> generateMoveObjects() {
+        return new Board(boards[next()]).generateMoves();
+    }
+
+    // Includes the board copy, see copyBoard for its cost alone.
+    @Benchmark
+    public Board applyMoveUnsafe() {
+        int i = next();
+        Board board = new Board(boards[i]);
+        board.applyMoveUnsafe(moves[i]);
+        return board;
+    }
+
+    @Benchmark
+    public Board copyBoard() {
+        return new Board(boards[next()]);
+    }
+
+    @Benchmark
+    public long makeUnmakeMove() {
+        int i = next();
+        boards[i].makeMove(moves[i]);
+        long hash = boards[i].getHash();
+        boards[i].unmakeMove();
+        return hash;
+    }
+
+    @Benchmark
+    public boolean isKingAttacked() {
+        Board board = boards[next()];
+        return board.isKingAttacked(board.getColorToPlay());
+    }
+
+    // Encodes into a reused buffer, toFenString would return the string cached by the first call on each position.
+    @Benchmark
+    public int writeFen() {
+        return boards[next()].writeFen(fenBuffer, 0, false);
+    }
+
+    @Benchmark
+    public Board parseFen() throws ParseException {
+        return new Board(fens[next()], crazyHouse);
+    }
+
+    // Includes the board copy, see copyBoard for its cost alone.
+    @Benchmark
+    public String getAlgebraicMove() {
+        int i = next();
+        return new Board(boards[i]).getAlgebraicMoveUnsafe(objectMoves[i]);
+    }
+}
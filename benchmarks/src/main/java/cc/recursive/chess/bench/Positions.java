@@ -0,0 +1,82 @@
+package cc.recursive.chess.bench;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import cc.recursive.chess.Board;
+import cc.recursive.chess.StartPosition;
+
+// Corpora of positions benchmarks iterate over, selected by name.
+public class Positions {
+    // Positions from the move generation test suite, see TestLegalMoves.
+    private static final String[] PerftFens = {
+        "r6r/1b2k1bq/8/8/7B/8/8/R3K2R b AH - 3 2",
+        "8/8/8/2k5/2pP4/8/B7/4K3 b - d3 5 3",
+        "r1bqkbnr/pppppppp/n7/8/8/P7/1PPPPPPP/RNBQKBNR w AHah - 2 2",
+        "r3k2r/p1pp1pb1/bn2Qnp1/2qPN3/1p2P3/2N5/PPPBBPPP/R3K2R b AHah - 3 2",
+        "2kr3r/p1ppqpb1/bn2Qnp1/3PN3/1p2P3/2N5/PPPBBPPP/R3K2R b AH - 3 2",
+        "rnb2k1r/pp1Pbppp/2p5/q7/2B5/8/PPPQNnPP/RNB1K2R w AH - 3 9",
+        "2r5/3pk3/8/2P5/8/2K5/8/8 w - - 5 4",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w AH - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1",
+        "8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1",
+        "8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1",
+        "5k2/8/8/8/8/8/8/4K2R w H - 0 1",
+        "3k4/8/8/8/8/8/8/R3K3 w A - 0 1",
+        "r3k2r/1b4bq/8/8/8/8/7B/R3K2R w AHah - 0 1",
+        "r3k2r/8/3Q4/8/8/5q2/8/R3K2R b AHah - 0 1",
+        "2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1",
+        "8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1",
+        "4k3/1P6/8/8/8/8/K7/8 w - - 0 1",
+        "8/P1k5/K7/8/8/8/8/8 w - - 0 1",
+        "K1k5/8/P7/8/8/8/8/8 w - - 0 1",
+        "8/k1P5/8/1K6/8/8/8/8 w - - 0 1",
+        "8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1",
+    };
+
+    // Distance between the start positions taken from the catalog, which gives 16 positions spread over all 960.
+    private static final int Chess960Stride = 60;
+
+    // Busy crazyhouse positions where reserves make drops dominate move generation.
+    private static final String[] CrazyHouseFens = {
+        "r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/2N2N2/PPPP1PPP/R1BQK2R/QRBNPPqrbnpp w AHah - 0 5",
+        "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1/QRRBBNNPPPPqrrbbnnpppp w - - 0 8",
+        "r1b1k2r/ppp2ppp/2n5/3Q~4/8/8/PPP2PPP/R1B1K2R/NNPPbbpp b AHah - 0 12",
+        "4k3/8/8/8/8/8/8/4K3/QQRRBBNNPPPPPPPPqqrrbbnnpppppppp w - - 0 30",
+    };
+
+    public static class Position {
+        public final String fen;
+        public final boolean crazyHouse;
+
+        Position(String fen, boolean crazyHouse) {
+            this.fen = fen;
+            this.crazyHouse = crazyHouse;
+        }
+
+        public Board createBoard() throws ParseException { return new Board(fen, crazyHouse); }
+    }
+
+    // Names of the corpora accepted by get.
+    public static final String Perft = "perft";
+    public static final String Chess960 = "chess960";
+    public static final String CrazyHouse = "crazyhouse";
+
+    public static List<Position> get(String corpus) {
+        List<Position> positions = new ArrayList<Position>();
+        if (corpus.equals(Perft)) {
+            for (String fen : PerftFens)
+                positions.add(new Position(fen, false));
+        } else if (corpus.equals(Chess960)) {
+            for (int index = 0; index < StartPosition.Count; index += Chess960Stride)
+                positions.add(new Position(StartPosition.get(index).getFen(), false));
+        } else if (corpus.equals(CrazyHouse)) {
+            for (String fen : CrazyHouseFens)
+                positions.add(new Position(fen, true));
+        } else
+            throw new IllegalArgumentException(String.format("Unknown corpus '%s'.", corpus));
+        return positions;
+    }
+}
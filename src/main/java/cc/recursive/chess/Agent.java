@@ -0,0 +1,10 @@
+package cc.recursive.chess;
+
+import java.util.List;
+
+// Player called directly on its turn, without going through the text protocol.
+public interface Agent {
+    // Returns the move to play, or null after resigning or accepting a draw through the context.
+    // The board is a copy which the agent is free to modify.
+    Move play(Board board, List<Move> legalMoves, GameContext context) throws GameException;
+}
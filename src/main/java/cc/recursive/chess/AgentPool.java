@@ -0,0 +1,45 @@
+package cc.recursive.chess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Idle agent processes running the same command, reused from one match to the next to avoid start up costs.
+public class AgentPool {
+    private final List<String> command;
+    private final ConcurrentLinkedQueue<AgentProcess> idle = new ConcurrentLinkedQueue<AgentProcess>();
+    // Every process started, to stop them all on close.
+    private final List<AgentProcess> started = new ArrayList<AgentProcess>();
+
+    public AgentPool(List<String> command) { this.command = command; }
+
+    public List<String> getCommand() { return command; }
+
+    // Returns an idle process, or a new one if there are none.
+    public AgentProcess acquire() throws IOException {
+        AgentProcess agent = idle.poll();
+        if (agent != null)
+            return agent;
+        agent = new AgentProcess(command);
+        synchronized (started) {
+            started.add(agent);
+        }
+        return agent;
+    }
+
+    // Gives back a process that is waiting for its next turn.
+    public void release(AgentProcess agent) { idle.add(agent); }
+
+    // Stops a process whose state is unknown, after a timeout or an invalid output.
+    public void discard(AgentProcess agent) { agent.close(); }
+
+    public void close() {
+        synchronized (started) {
+            for (AgentProcess agent : started)
+                agent.close();
+            started.clear();
+        }
+        idle.clear();
+    }
+}
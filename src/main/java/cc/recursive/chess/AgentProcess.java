@@ -0,0 +1,79 @@
+package cc.recursive.chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Player program speaking the referee protocol on its standard input and output.
+// Output lines are read by a background thread so that reads can time out.
+public class AgentProcess {
+    // Marks the end of the output stream in the line queue.
+    private static final String EndOfStream = new String();
+
+    private final Process process;
+    private final Writer input;
+    private final BlockingQueue<String> outputLines = new LinkedBlockingQueue<String>();
+    // Input variables requested on the configuration turn, null until configured.
+    private String[] inputVariables = null;
+    // Number of output lines read so far.
+    private int readCount = 0;
+
+    public AgentProcess(List<String> command) throws IOException {
+        process = new ProcessBuilder(command).start();
+        input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        startReader(process.getInputStream(), true);
+        // Error output must be drained or a chatty agent would block once the pipe is full.
+        startReader(process.getErrorStream(), false);
+    }
+
+    private void startReader(InputStream stream, boolean keepLines) {
+        Thread thread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (keepLines) outputLines.add(line);
+                }
+            } catch (IOException e) {
+                // Stream closed along with the process.
+            }
+            if (keepLines) outputLines.add(EndOfStream);
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public String[] getInputVariables() { return inputVariables; }
+    public void setInputVariables(String[] inputVariables) { this.inputVariables = inputVariables; }
+    public boolean isConfigured() { return inputVariables != null; }
+    public int getReadCount() { return readCount; }
+
+    public void sendLines(List<String> lines) throws IOException {
+        for (String line : lines) {
+            input.write(line);
+            input.write('\n');
+        }
+        input.flush();
+    }
+
+    // Waits for the next output line, failing if the agent exits or takes longer than the timeout.
+    public String readLine(long timeoutMillis) throws IOException, TimeoutException, InterruptedException {
+        String line = outputLines.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (line == null) throw new TimeoutException("Timeout");
+        if (line == EndOfStream) {
+            outputLines.add(EndOfStream);
+            throw new IOException("Agent has exited");
+        }
+        readCount++;
+        return line;
+    }
+
+    public void close() { process.destroyForcibly(); }
+}
@@ -0,0 +1,165 @@
+package cc.recursive.chess;
+
+// Precomputed attack tables for 64-bit boards where bit index is row * 8 + column.
+public class Bitboards {
+    public static final long ColumnA = 0x0101010101010101L;
+    public static final long ColumnH = ColumnA << (Constants.Columns - 1);
+    public static final long Row1 = 0xFFL;
+    public static final long Row8 = Row1 << (Constants.Squares - Constants.Columns);
+    public static final long LightSquares = 0x55AA55AA55AA55AAL;
+    // Pawns cannot be dropped on the first and last rows.
+    public static final long PawnDropSquares = ~(Row1 | Row8);
+
+    public static final long[] KnightAttacks = new long[Constants.Squares];
+    public static final long[] KingAttacks = new long[Constants.Squares];
+    // Squares attacked by a pawn of given color standing on a square.
+    public static final long[][] PawnAttacks = new long[Constants.Colors][Constants.Squares];
+    // Squares strictly between two squares on the same row, column or diagonal, empty otherwise.
+    public static final long[][] Between = new long[Constants.Squares][Constants.Squares];
+    // Whole row, column or diagonal going through two squares, empty if they are not aligned.
+    public static final long[][] Line = new long[Constants.Squares][Constants.Squares];
+
+    // Magic bitboards for sliding pieces. https://www.chessprogramming.org/Magic_Bitboards
+    // Multipliers were found by trial and error once, searching them on every start took over a second.
+    private static final long[] RookMagics = {
+        0x0080008420144000L, 0x0140001000402000L, 0x8100200100081040L, 0x0580100181040800L,
+        0x0480040002480180L, 0x020002001004C108L, 0x06002600180104ACL, 0x0A00010200804024L,
+        0x1102800320814002L, 0xC000808040002000L, 0x0202802000821000L, 0x4210800800801000L,
+        0x8008808044004800L, 0x0006002418100200L, 0x0A00800200010080L, 0x0202000208804114L,
+        0x0280044002200041L, 0x3010004020004008L, 0x0010002008040022L, 0x8000210008100102L,
+        0x60A2020004110820L, 0x0222008080040002L, 0x00C0840002085110L, 0x02004A0000810454L,
+        0x0080401080008020L, 0x0040200040100048L, 0x0006041200208040L, 0x2010100100210008L,
+        0x5090080080800400L, 0x0022002200042950L, 0x011010040002E108L, 0x0000240200009041L,
+        0x0010400020800080L, 0x0040401000402000L, 0x0200200080801000L, 0x4140080080801003L,
+        0x0000800400800800L, 0x0800040080800200L, 0x1008080284002110L, 0x00A001008A001444L,
+        0x3040002040908000L, 0x1000422010024000L, 0x0040402001010010L, 0x8000100008008080L,
+        0x0084008008028004L, 0x0002000204008080L, 0x0000088210040001L, 0x0280C12080520004L,
+        0x028700800C402B00L, 0x0180200040008080L, 0x80A0008020100080L, 0x0001012010008900L,
+        0x4000040108008180L, 0x000C000402008080L, 0x004B0002002C0900L, 0x0020D42040811200L,
+        0x8844520121004082L, 0x1109150082204001L, 0x0302000820408012L, 0x2081002208041001L,
+        0x0002000804201002L, 0x5101000A28040029L, 0x0100080112489004L, 0x02000E4400288102L
+    };
+    private static final long[] BishopMagics = {
+        0x4014281015002108L, 0x0060020882029000L, 0x1104440082102120L, 0x4004410020042802L,
+        0x0011104020140040L, 0x0006074460005020L, 0x48208E0820040201L, 0x0202050401042240L,
+        0x400C401014208AA0L, 0x01C020064A424100L, 0x0012304408424000L, 0x21008808510C0004L,
+        0x0020141420000024L, 0x0004009004202009L, 0x4002008410080450L, 0x2000088280B82000L,
+        0x4040002410828602L, 0x08448030810A1410L, 0x1010032104008110L, 0x0850810802084244L,
+        0x0804000202112040L, 0x4901008610009420L, 0x31A0402411082800L, 0x8402000107620200L,
+        0x2210311041126208L, 0x0295218018020400L, 0x2092010408104400L, 0x0004040000401080L,
+        0x0020404004010041L, 0x80448A0109080618L, 0x008084110A0A0200L, 0x204C00C000A70440L,
+        0x3010106441114400L, 0x0C94115400181000L, 0x1821403000020400L, 0x2000020082480080L,
+        0x2080408020020200L, 0x0020080040068040L, 0x20089D8888190802L, 0x000F820044408408L,
+        0x2084022006089000L, 0x22510101A0401020L, 0x40000A0802009408L, 0x140483C010420200L,
+        0x0449200208811408L, 0x0002220042000100L, 0x00281000D0800201L, 0x044200A519010200L,
+        0x0300421050080002L, 0x00C0540401080004L, 0x4801010088040034L, 0x8400000210540051L,
+        0x400400404822002CL, 0x2080070448020000L, 0x1B2082100A00A000L, 0x4002021802108000L,
+        0xC000248800901000L, 0x0000024100B01100L, 0x1902103044022100L, 0x0000004404228810L,
+        0x0101000008210100L, 0x0025000820089082L, 0x0008091010008120L, 0x9120024202040010L
+    };
+    private static final long[] RookMasks = new long[Constants.Squares];
+    private static final int[] RookShifts = new int[Constants.Squares];
+    private static final long[][] RookTables = new long[Constants.Squares][];
+    private static final long[] BishopMasks = new long[Constants.Squares];
+    private static final int[] BishopShifts = new int[Constants.Squares];
+    private static final long[][] BishopTables = new long[Constants.Squares][];
+
+    static {
+        for (int square = 0; square < Constants.Squares; square++) {
+            Square from = Square.fromIndex(square);
+            KnightAttacks[square] = toBitboard(from.getKnightNeighbours());
+            KingAttacks[square] = toBitboard(from.getKingNeighbours());
+            for (int deltaColumn = -1; deltaColumn <= 1; deltaColumn += 2) {
+                PawnAttacks[Color.White.ordinal()][square] |= toBitboard(from.offset(deltaColumn, 1));
+                PawnAttacks[Color.Black.ordinal()][square] |= toBitboard(from.offset(deltaColumn, -1));
+            }
+
+            for (int direction = 0; direction < Constants.Directions; direction++) {
+                // Opposite directions are stored next to each other.
+                long line = toBitboard(from.getRay(direction)) | toBitboard(from.getRay(direction ^ 1)) | (1L << square);
+                long between = 0;
+                for (Square to : from.getRay(direction)) {
+                    Between[square][to.getIndex()] = between;
+                    Line[square][to.getIndex()] = line;
+                    between |= 1L << to.getIndex();
+                }
+            }
+        }
+
+        for (int square = 0; square < Constants.Squares; square++) {
+            RookMasks[square] = relevantMask(square, 0, Constants.StraightDirections);
+            RookShifts[square] = Constants.Squares - Long.bitCount(RookMasks[square]);
+            RookTables[square] = new long[1 << Long.bitCount(RookMasks[square])];
+            fillTable(square, RookMasks[square], RookMagics[square], RookShifts[square], RookTables[square], 0, Constants.StraightDirections);
+            BishopMasks[square] = relevantMask(square, Constants.StraightDirections, Constants.Directions);
+            BishopShifts[square] = Constants.Squares - Long.bitCount(BishopMasks[square]);
+            BishopTables[square] = new long[1 << Long.bitCount(BishopMasks[square])];
+            fillTable(square, BishopMasks[square], BishopMagics[square], BishopShifts[square], BishopTables[square], Constants.StraightDirections, Constants.Directions);
+        }
+    }
+
+    public static long rookAttacks(int square, long occupied) {
+        return RookTables[square][(int)(((occupied & RookMasks[square]) * RookMagics[square]) >>> RookShifts[square])];
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        return BishopTables[square][(int)(((occupied & BishopMasks[square]) * BishopMagics[square]) >>> BishopShifts[square])];
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+
+    public static long rowMask(int row) { return Row1 << (row * Constants.Columns); }
+    public static long columnMask(int column) { return ColumnA << column; }
+
+    // Shifts all bits by a signed square delta, bits leaving the board are dropped.
+    public static long shift(long bits, int delta) { return delta >= 0 ? bits << delta : bits >>> -delta; }
+
+    private static long toBitboard(Square... squares) {
+        long result = 0;
+        for (Square square : squares) {
+            if (square != null)
+                result |= 1L << square.getIndex();
+        }
+        return result;
+    }
+
+    // Attacks computed by walking rays in a range of directions, only used to fill tables.
+    private static long slideAttacks(int square, long occupied, int firstDirection, int endDirection) {
+        long attacks = 0;
+        for (int direction = firstDirection; direction < endDirection; direction++) {
+            for (Square to : Square.fromIndex(square).getRay(direction)) {
+                long b = 1L << to.getIndex();
+                attacks |= b;
+                if ((occupied & b) != 0) break;
+            }
+        }
+        return attacks;
+    }
+
+    // Squares whose occupancy matters for sliding attacks, which excludes the last square of each ray.
+    private static long relevantMask(int square, int firstDirection, int endDirection) {
+        long mask = 0;
+        for (int direction = firstDirection; direction < endDirection; direction++) {
+            Square[] ray = Square.fromIndex(square).getRay(direction);
+            for (int range = 0; range < ray.length - 1; range++)
+                mask |= 1L << ray[range].getIndex();
+        }
+        return mask;
+    }
+
+    // Stores the attacks of every occupancy subset at the index given by the multiplier, which must not map two different attacks together.
+    private static void fillTable(int square, long mask, long magic, int shift, long[] table, int firstDirection, int endDirection) {
+        boolean[] filled = new boolean[table.length];
+        long subset = 0;
+        do {
+            int index = (int)((subset * magic) >>> shift);
+            long attacks = slideAttacks(square, subset, firstDirection, endDirection);
+            if (filled[index] && table[index] != attacks) throw new IllegalStateException(String.format("Magic of square %d has a collision.", square));
+            filled[index] = true;
+            table[index] = attacks;
+            subset = (subset - mask) & mask;
+        } while (subset != 0);
+    }
+}
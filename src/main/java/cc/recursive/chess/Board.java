@@ -1,18 +1,31 @@
 package cc.recursive.chess;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-import java.util.function.BiConsumer;
 
 public class Board {
-    // Board cells with piece when present, null when not.
-    private Piece[][] cells = new Piece[Constants.Columns][Constants.Rows];
+    // Board cells with piece when present, null when not, indexed by square index.
+    private Piece[] cells = new Piece[Constants.Squares];
+    // Bitboards of pieces for each color and piece type.
+    private long[][] pieceBitboards = new long[Constants.Colors][Constants.PieceTypes];
+    // Bitboards of all pieces for each color.
+    private long[] colorBitboards = new long[Constants.Colors];
+    // Bitboard of all pieces on the board.
+    private long occupiedBitboard = 0;
+    // Number of pieces on the board for each color and piece type, and of bishops on dark and light squares for each color.
+    private int[][] pieceCounts = new int[Constants.Colors][Constants.PieceTypes];
+    private int[][] bishopCounts = new int[Constants.Colors][2];
+    // Value of the pieces on the board for each color, see Constants.PieceValues.
+    private int[] material = new int[Constants.Colors];
+    // Square index of the king of each color, -1 when missing.
+    private int[] kingSquares = { -1, -1 };
     // Castlings that may still be available.
     private List<Castling> castlings = new ArrayList<Castling>();
-    // En-passant square when last move is pawn moving 2 squares from initial row.
-    private Square enPassantSquare = null;
+    // En-passant square index when last move is pawn moving 2 squares from initial row, -1 when not.
+    private int enPassantSquare = -1;
     // Number of half-moves since the last capture or pawn advance, used for the fifty-move draw.
     private int halfMoveClock = 0;
     // Number of half-moves since the start of the game.
@@ -23,11 +36,44 @@ public class Board {
     private int[][] reservePieces = new int[Constants.Colors][Constants.ReservePieces.length];
     // List of squares of highlight to show last move in viewer.
     private List<Square> highlightSquares = new ArrayList<Square>();
+    // Zobrist hash of pieces, castling rights, reserves and color to play, en-passant is added by getHash.
+    private long hash = 0;
+    // Records of moves performed with makeMove, in order.
+    private UndoRecord[] undoStack = new UndoRecord[16];
+    private int undoCount = 0;
+    // Record used by applyMoveUnsafe, whose moves are never taken back.
+    private UndoRecord appliedUndo = new UndoRecord();
+    // Legal moves of the current position when valid, computed on demand by getLegalMoves.
+    private MoveList legalMoves = null;
+    private boolean legalMovesValid = false;
+    // Legal moves of the position reached by childMove, kept by unmakeMove while the position is unchanged.
+    private MoveList childMoves = null;
+    private int childMove = PackedMove.None;
+    private boolean childMovesValid = false;
+    // FEN strings of the current position once encoded, null until then.
+    private String fenString = null;
+    private String repetitionFenString = null;
+    private char[] fenBuffer = null;
 
     public Board(Board other) {
-        for (int column = 0; column < Constants.Columns; column++) {
-            for (int row = 0; row < Constants.Rows; row++)
-                cells[column][row] = other.cells[column][row];
+        System.arraycopy(other.cells, 0, cells, 0, Constants.Squares);
+        for (int color = 0; color < Constants.Colors; color++)
+            System.arraycopy(other.pieceBitboards[color], 0, pieceBitboards[color], 0, Constants.PieceTypes);
+        System.arraycopy(other.colorBitboards, 0, colorBitboards, 0, Constants.Colors);
+        occupiedBitboard = other.occupiedBitboard;
+        for (int color = 0; color < Constants.Colors; color++) {
+            System.arraycopy(other.pieceCounts[color], 0, pieceCounts[color], 0, Constants.PieceTypes);
+            System.arraycopy(other.bishopCounts[color], 0, bishopCounts[color], 0, 2);
+        }
+        System.arraycopy(other.material, 0, material, 0, Constants.Colors);
+        System.arraycopy(other.kingSquares, 0, kingSquares, 0, Constants.Colors);
+        hash = other.hash;
+        fenString = other.fenString;
+        repetitionFenString = other.repetitionFenString;
+        if (other.legalMovesValid) {
+            legalMoves = new MoveList();
+            legalMoves.addAll(other.legalMoves);
+            legalMovesValid = true;
         }
         for (Castling castling : other.castlings)
             castlings.add(new Castling(castling));
@@ -41,117 +87,191 @@ public class Board {
         }
     }
 
-    public Board(long seed, boolean crazyHouse) {
+    // Seed 0 means the classic setup, other seeds pick one of the Chess960 setups, see StartPosition.getIndex.
+    public Board(long seed, boolean crazyHouse) { this(StartPosition.fromSeed(seed), crazyHouse); }
+
+    public Board(StartPosition position, boolean crazyHouse) {
         this.crazyHouse = crazyHouse;
 
-        if (seed == 0) {
-            // seed=0 means classic chess initial row.
-            PieceType[] initialRow = { PieceType.Rook, PieceType.Knight, PieceType.Bishop, PieceType.Queen, PieceType.King, PieceType.Bishop, PieceType.Knight, PieceType.Rook};
-            int row = getInitialRow(Color.White);
-            for (int column = 0; column < initialRow.length; column++)
-                set(new Square(column, row), new Piece(initialRow[column], Color.White));
-        } else {
-            // Random picks on initial row for a total of 960 combinations.
-            // Following procedure as described at https://en.wikipedia.org/wiki/Chess960#Setup
-            int row = getInitialRow(Color.White);
-            Random rng = new Random(seed);
-            set(new Square(rng.nextInt(4) * 2, row), new Piece(PieceType.Bishop, Color.White));
-            set(new Square(rng.nextInt(4) * 2 + 1, row), new Piece(PieceType.Bishop, Color.White));
-            BiConsumer<Integer, PieceType> placePiece = (Integer emptyColumn, PieceType pieceType) -> {
-                for (int column = 0; column < Constants.Columns; column++) {
-                    Square square = new Square(column, row);
-                    if (get(square) != null) continue;
-                    if (emptyColumn == 0) {
-                        set(square, new Piece(pieceType, Color.White));
-                        return;
-                    }
-                    emptyColumn--;
-                }
-                throw new IllegalArgumentException("Not enough empty columns to satisfy argument");
-            };
-            placePiece.accept(rng.nextInt(6), PieceType.Queen);
-            placePiece.accept(rng.nextInt(5), PieceType.Knight);
-            placePiece.accept(rng.nextInt(4), PieceType.Knight);
-            placePiece.accept(0, PieceType.Rook);
-            placePiece.accept(0, PieceType.King);
-            placePiece.accept(0, PieceType.Rook);
-        }
-        
         for (int column = 0; column < Constants.Columns; column++) {
-            Piece piece = get(new Square(column, getInitialRow(Color.White)));
-            // Copy initial row on black side.
-            set(new Square(column, getInitialRow(Color.Black)), piece.invert());
+            PieceType pieceType = position.getBackRankPiece(column);
+            set(Square.of(column, getInitialRow(Color.White)), Piece.of(pieceType, Color.White));
+            set(Square.of(column, getInitialRow(Color.Black)), Piece.of(pieceType, Color.Black));
             // Create pawns on second row of each side.
-            set(new Square(column, getPawnRow(Color.White)), new Piece(PieceType.Pawn, Color.White));
-            set(new Square(column, getPawnRow(Color.Black)), new Piece(PieceType.Pawn, Color.Black));
+            set(Square.of(column, getPawnRow(Color.White)), Piece.of(PieceType.Pawn, Color.White));
+            set(Square.of(column, getPawnRow(Color.Black)), Piece.of(PieceType.Pawn, Color.Black));
             // Keep track of castling columns.
-            if (piece.getPieceType() == PieceType.Rook)
+            if (pieceType == PieceType.Rook)
                 castlings.add(new Castling(column, true));
         }
+        hash ^= getCastlingHash(getCastlingRights());
+
+        // Reuse the moves of the catalog, once it is built.
+        int[] openingMoves = position.getOpeningMoves();
+        if (openingMoves != null) {
+            legalMoves = new MoveList();
+            for (int move : openingMoves)
+                legalMoves.add(move);
+            legalMovesValid = true;
+        }
     }
 
-    // Parse from FEN representation. https://en.wikipedia.org/wiki/Forsyth-Edwards_Notation
-    public Board(String fen, boolean crazyHouse) throws ParseException {
+    // Parse from FEN representation, reading the characters in place. https://en.wikipedia.org/wiki/Forsyth-Edwards_Notation
+    public Board(CharSequence fen, boolean crazyHouse) throws ParseException {
         this.crazyHouse = crazyHouse;
 
-        String[] parts = fen.split(" ");
-        if (parts.length != 6) throw new ParseException("FEN string is malformed, needs 6 fields.", 0);
+        int length = fen.length();
+        while (length > 0 && fen.charAt(length - 1) == ' ')
+            length--;
+        int fields = 1;
+        for (int i = 0; i < length; i++) {
+            if (fen.charAt(i) == ' ') fields++;
+        }
+        if (fields != 6) throw new ParseException("FEN string is malformed, needs 6 fields.", 0);
+
+        int start = 0, end = nextFieldEnd(fen, start, length);
         {
             int column = 0, row = Constants.Rows - 1;
-            for (char c : parts[0].toCharArray()) {
+            for (int i = start; i < end; i++) {
+                char c = fen.charAt(i);
                 if (c == '/') {
                     row--;
                     column = 0;
                 }
                 else if (c >= '1' && c <= '9')
                     column += c - '0';
-                else {
-                    if (row >= 0 && row < Constants.Rows && column >= 0 && column < Constants.Columns) {
-                        if (crazyHouse && c == '~') {
-                            column--;
-                            Square square = new Square(column, row);
-                            Piece piece = get(square);
-                            if (piece == null) throw new ParseException("Found ~ symbol without an associated piece.", 0);
-                            set(square, piece.promote());
-                        } else
-                            set(new Square(column, row), Piece.fromChar(c));
-                    } else if (crazyHouse && row < 0) {
+                else if (crazyHouse && c == '~') {
+                    // Marks the piece read just before as a promoted pawn.
+                    int square = row * Constants.Columns + column - 1;
+                    if (row < 0 || row >= Constants.Rows || column < 1 || column > Constants.Columns || cells[square] == null)
+                        throw new ParseException("Found ~ symbol without an associated piece.", i);
+                    set(square, cells[square].promote());
+                } else {
+                    if (row >= 0 && row < Constants.Rows && column >= 0 && column < Constants.Columns)
+                        set(row * Constants.Columns + column, Piece.fromChar(c));
+                    else if (crazyHouse && row < 0) {
                         PieceType pieceType = PieceType.fromChar(c);
-                        if (pieceType == PieceType.King) throw new ParseException("Found a king in a reserve.", 0);
-                        addReserve(Character.isUpperCase(c) ? Color.White : Color.Black, pieceType, 1);
+                        if (pieceType == PieceType.King) throw new ParseException("Found a king in a reserve.", i);
+                        changeReserve(Character.isUpperCase(c) ? Color.White : Color.Black, pieceType, 1);
                     }
                     column++;
                 }
             }
         }
-        Color colorToPlay = Color.fromChar(parts[1].charAt(0));
-        if (!parts[2].equals("-")) {
-            for (char c : parts[2].toCharArray()) {
-                int column = Square.charToColumn(c);
+        start = end + 1;
+        end = nextFieldEnd(fen, start, length);
+        if (start == end) throw new ParseException("FEN string is missing the color to play.", start);
+        Color colorToPlay = Color.fromChar(fen.charAt(start));
+        start = end + 1;
+        end = nextFieldEnd(fen, start, length);
+        if (!isEmptyField(fen, start, end)) {
+            for (int i = start; i < end; i++) {
+                char c = fen.charAt(i);
+                Color color = Character.isUpperCase(c) ? Color.White : Color.Black;
+                char lower = Character.toLowerCase(c);
+                // X-FEN letters designate the outermost rook on that side of the king, as found in PGN files.
+                int column = lower == 'k' || lower == 'q' ? findOuterRookColumn(color, lower == 'k', i) : Square.charToColumn(c);
                 Castling castling = null;
-                for (Castling iter : castlings) {
-                    if (iter.getColumn() != column) continue;
-                    castling = iter;
-                    break;
+                int index = 0;
+                for (; index < castlings.size() && castlings.get(index).getColumn() <= column; index++) {
+                    if (castlings.get(index).getColumn() == column)
+                        castling = castlings.get(index);
                 }
                 if (castling == null) {
-                    if (castlings.size() >= Constants.Castlings) throw new ParseException("Too many castlings found.", 0);
+                    if (castlings.size() >= Constants.Castlings) throw new ParseException("Too many castlings found.", i);
+                    // Kept in column order, so that the FEN written back does not depend on the order of the letters read.
                     castling = new Castling(column, false);
-                    castlings.add(castling);
+                    castlings.add(index, castling);
                 }
-                castling.setAllowed(Character.isUpperCase(c) ? Color.White : Color.Black, true);
+                castling.setAllowed(color, true);
             }
         }
-        if (!parts[3].equals("-"))
-            enPassantSquare = new Square(parts[3]);
-        halfMoveClock = Integer.parseInt(parts[4]);
-        if (halfMoveClock < 0) throw new ParseException("Half-move clock must be greater or equal to zero.", 0);
-        halfMoves = (Integer.parseInt(parts[5]) - 1) * 2 + (colorToPlay == Color.White ? 0 : 1);
-        if (halfMoves < 0) throw new ParseException("Fullmove number must be greater than zero.", 0);
+        start = end + 1;
+        end = nextFieldEnd(fen, start, length);
+        if (!isEmptyField(fen, start, end)) {
+            if (end - start != 2) throw new ParseException(String.format("'%s' is not a square.", fen.subSequence(start, end)), start);
+            enPassantSquare = Square.charToRow(fen.charAt(start + 1)) * Constants.Columns + Square.charToColumn(fen.charAt(start));
+        }
+        start = end + 1;
+        end = nextFieldEnd(fen, start, length);
+        halfMoveClock = parseNumber(fen, start, end);
+        if (halfMoveClock < 0) throw new ParseException("Half-move clock must be greater or equal to zero.", start);
+        start = end + 1;
+        halfMoves = (parseNumber(fen, start, length) - 1) * 2 + (colorToPlay == Color.White ? 0 : 1);
+        if (halfMoves < 0) throw new ParseException("Fullmove number must be greater than zero.", start);
+        hash ^= getCastlingHash(getCastlingRights());
+        if (colorToPlay == Color.Black)
+            hash ^= Zobrist.BlackToPlay;
+    }
+
+    private int findOuterRookColumn(Color color, boolean kingSide, int offset) throws ParseException {
+        int rowStart = getInitialRow(color) * Constants.Columns;
+        Piece rook = Piece.of(PieceType.Rook, color), king = Piece.of(PieceType.King, color);
+        int delta = kingSide ? -1 : 1;
+        for (int column = kingSide ? Constants.Columns - 1 : 0; column >= 0 && column < Constants.Columns; column += delta) {
+            if (cells[rowStart + column] == king) break;
+            if (cells[rowStart + column] == rook) return column;
+        }
+        throw new ParseException("Found a castling without a rook.", offset);
+    }
+
+    private static int nextFieldEnd(CharSequence fen, int start, int length) {
+        int end = start;
+        while (end < length && fen.charAt(end) != ' ')
+            end++;
+        return end;
     }
 
-    public Piece get(Square square) { return cells[square.getColumn()][square.getRow()]; }
-    private void set(Square square, Piece piece) { cells[square.getColumn()][square.getRow()] = piece; }
+    private static boolean isEmptyField(CharSequence fen, int start, int end) { return end - start == 1 && fen.charAt(start) == '-'; }
+
+    private static int parseNumber(CharSequence fen, int start, int end) throws ParseException {
+        boolean negative = start < end && fen.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) throw new ParseException(String.format("'%s' is not a number.", fen.subSequence(start, end)), start);
+        int result = 0;
+        for (; i < end; i++) {
+            char c = fen.charAt(i);
+            if (c < '0' || c > '9') throw new ParseException(String.format("'%s' is not a number.", fen.subSequence(start, end)), start);
+            result = result * 10 + (c - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    public Piece get(Square square) { return cells[square.getIndex()]; }
+    private void set(Square square, Piece piece) { set(square.getIndex(), piece); }
+
+    // Replaces the content of a cell and keeps bitboards and material counts in sync.
+    private void set(int square, Piece piece) {
+        long bit = 1L << square;
+        Piece previous = cells[square];
+        if (previous != null) {
+            int color = previous.getColor().ordinal(), pieceType = previous.getPieceType().ordinal();
+            pieceBitboards[color][pieceType] &= ~bit;
+            colorBitboards[color] &= ~bit;
+            pieceCounts[color][pieceType]--;
+            material[color] -= Constants.PieceValues[pieceType];
+            if (previous.getPieceType() == PieceType.Bishop)
+                bishopCounts[color][(int)(Bitboards.LightSquares >>> square) & 1]--;
+            // The king may already have been set on its new square.
+            else if (previous.getPieceType() == PieceType.King && kingSquares[color] == square)
+                kingSquares[color] = -1;
+            hash ^= getPieceHash(previous, square);
+        }
+        cells[square] = piece;
+        if (piece != null) {
+            int color = piece.getColor().ordinal(), pieceType = piece.getPieceType().ordinal();
+            pieceBitboards[color][pieceType] |= bit;
+            colorBitboards[color] |= bit;
+            pieceCounts[color][pieceType]++;
+            material[color] += Constants.PieceValues[pieceType];
+            if (piece.getPieceType() == PieceType.Bishop)
+                bishopCounts[color][(int)(Bitboards.LightSquares >>> square) & 1]++;
+            else if (piece.getPieceType() == PieceType.King)
+                kingSquares[color] = square;
+            hash ^= getPieceHash(piece, square);
+        }
+        occupiedBitboard = colorBitboards[Color.White.ordinal()] | colorBitboards[Color.Black.ordinal()];
+    }
 
     public Color getColorToPlay() { return halfMoves % 2 == 0 ? Color.White : Color.Black; }
     public int getInitialRow(Color color) { return color == Color.White ? 0 : Constants.Rows - 1; }
@@ -161,326 +281,506 @@ public class Board {
 
     public int getHalfMoves() { return halfMoves; }
     public int getHalfMoveClock() { return halfMoveClock; }
+    public boolean isCrazyHouse() { return crazyHouse; }
+    public int getPieceCount(Color color, PieceType pieceType) { return pieceCounts[color.ordinal()][pieceType.ordinal()]; }
+    public int getBishopCount(Color color, boolean lightSquares) { return bishopCounts[color.ordinal()][lightSquares ? 1 : 0]; }
+    // Value of the pieces on the board, reserves excluded, a cheap signal for bots and adjudication.
+    public int getMaterial(Color color) { return material[color.ordinal()]; }
+    // Squares holding the pieces of a color and type, as a bitboard indexed like Square.getIndex.
+    public long getPieceBitboard(Color color, PieceType pieceType) { return pieceBitboards[color.ordinal()][pieceType.ordinal()]; }
 
     public int getReserve(Color color, PieceType pieceType) {
         if (pieceType == PieceType.King) throw new IllegalArgumentException("Reserve pieces does not include kings.");
         return reservePieces[color.ordinal()][pieceType.ordinal()];
     }
-    public void addReserve(Color color, PieceType pieceType, int count) { 
+    public void addReserve(Color color, PieceType pieceType, int count) {
+        changeReserve(color, pieceType, count);
+        legalMovesValid = false;
+        childMovesValid = false;
+        fenString = null;
+        repetitionFenString = null;
+    }
+    private void changeReserve(Color color, PieceType pieceType, int count) {
         if (pieceType == PieceType.King) throw new IllegalArgumentException("Reserve pieces does not include kings.");
+        int previous = reservePieces[color.ordinal()][pieceType.ordinal()];
         reservePieces[color.ordinal()][pieceType.ordinal()] += count;
         if (reservePieces[color.ordinal()][pieceType.ordinal()] < 0) throw new IllegalArgumentException("Reserve count has become negative.");
+        hash ^= Zobrist.Reserves[color.ordinal()][pieceType.ordinal()][previous] ^ Zobrist.Reserves[color.ordinal()][pieceType.ordinal()][previous + count];
+    }
+
+    // Zobrist hash of the position, equal for positions with equal repetition FEN strings.
+    public long getHash() {
+        // Like for repetition FEN strings, only hash en-passant square if such a capture is possible.
+        if (!hasEnPassantCapture())
+            return hash;
+        return hash ^ Zobrist.EnPassantColumns[enPassantSquare % Constants.Columns];
+    }
+
+    // Whether a pawn of the color to play stands next to a pawn which has just advanced two rows.
+    public boolean hasEnPassantCapture() {
+        if (enPassantSquare == -1) return false;
+        Color selfColor = getColorToPlay();
+        return (Bitboards.PawnAttacks[selfColor.opposite().ordinal()][enPassantSquare] & pieceBitboards[selfColor.ordinal()][PieceType.Pawn.ordinal()]) != 0;
+    }
+
+    public boolean hasCastlingRights() { return getCastlingRights() != 0; }
+
+    // Promoted pieces are only distinguished in crazyhouse, matching FEN strings.
+    private long getPieceHash(Piece piece, int square) {
+        return Zobrist.Pieces[piece.getColor().ordinal()][piece.getPieceType().ordinal()][crazyHouse && piece.isPromoted() ? 1 : 0][square];
     }
 
-    // Encode board to FEN representation. https://en.wikipedia.org/wiki/Forsyth-Edwards_Notation
+    private long getCastlingHash(int rights) {
+        long result = 0;
+        for (int i = 0; i < castlings.size(); i++) {
+            for (Color color : Color.values()) {
+                if ((rights & (1 << (i * Constants.Colors + color.ordinal()))) != 0)
+                    result ^= Zobrist.Castlings[color.ordinal()][castlings.get(i).getColumn()];
+            }
+        }
+        return result;
+    }
+
+    // Encode board to FEN representation, the result is kept until the position changes. https://en.wikipedia.org/wiki/Forsyth-Edwards_Notation
     public String toFenString(boolean forRepetition) {
-        StringBuilder sb = new StringBuilder();
+        if (forRepetition) {
+            if (repetitionFenString == null)
+                repetitionFenString = encodeFen(true);
+            return repetitionFenString;
+        }
+        if (fenString == null)
+            fenString = encodeFen(false);
+        return fenString;
+    }
+
+    // Appends the FEN representation to out without building a string.
+    public void writeFen(Appendable out, boolean forRepetition) throws IOException {
+        String cached = forRepetition ? repetitionFenString : fenString;
+        if (cached != null) {
+            out.append(cached);
+            return;
+        }
+        int length = writeFen(getFenBuffer(), 0, forRepetition);
+        for (int i = 0; i < length; i++)
+            out.append(fenBuffer[i]);
+    }
+
+    // Writes the FEN representation at offset in buffer and returns the number of characters written.
+    // Constants.MaxFenLength characters are enough, plus one for each reserve piece above Constants.Squares.
+    public int writeFen(char[] buffer, int offset, boolean forRepetition) {
+        int position = offset;
         for (int row = Constants.Rows - 1; row >= 0; row--) {
             int empty = 0;
             for (int column = 0; column < Constants.Columns; column++) {
-                Square square = new Square(column, row);
-                Piece piece = get(square);
+                Piece piece = cells[row * Constants.Columns + column];
                 if (piece == null)
                     empty++;
                 else {
                     if (empty > 0) {
-                        sb.append((char)('0' + empty));
+                        buffer[position++] = (char)('0' + empty);
                         empty = 0;
                     }
-                    sb.append(piece.toChar());
+                    buffer[position++] = piece.toChar();
                     // Follow lichess crazyhouse convention and add symbol to indicate promoted pawn.
                     if (crazyHouse && piece.isPromoted())
-                        sb.append('~');
+                        buffer[position++] = '~';
                 }
             }
-            // Copy-paste because Java lambdas are exceptionally weak.
-            if (empty > 0) {
-                sb.append((char)('0' + empty));
-                empty = 0;
-            }
+            if (empty > 0)
+                buffer[position++] = (char)('0' + empty);
             if (row > 0)
-                sb.append('/');
+                buffer[position++] = '/';
         }
         // Follow lichess crazyhouse convention and encode reserve as an extra row.
         if (crazyHouse) {
-            sb.append('/');
+            buffer[position++] = '/';
             for (Color color : Color.values()) {
                 for (PieceType pieceType : Constants.ReservePieces) {
                     int count = getReserve(color, pieceType);
-                    if (count == 0) continue;
                     for (int j = 0; j < count; j++)
-                        sb.append(pieceType.toChar(color));
+                        buffer[position++] = pieceType.toChar(color);
                 }
             }
         }
-        sb.append(' ');
-        sb.append(getColorToPlay().toChar());
-        sb.append(' ');
-        int beforeCastling = sb.length();
+        buffer[position++] = ' ';
+        buffer[position++] = getColorToPlay().toChar();
+        buffer[position++] = ' ';
+        int beforeCastling = position;
         for (Color color : Color.values()) {
             for (Castling castling : castlings) {
                 char c = Square.columnToChar(castling.getColumn());
-                if (castling.isAllowed(color)) sb.append(color == Color.White ? Character.toUpperCase(c) : c);
+                if (castling.isAllowed(color)) buffer[position++] = color == Color.White ? Character.toUpperCase(c) : c;
             }
         }
-        if (sb.length() == beforeCastling) sb.append('-');
-        sb.append(' ');
-        if (!forRepetition || enPassantSquare == null)
-            sb.append(enPassantSquare != null ? enPassantSquare.toString() : '-');
-        else {
-            // For repetition check, only print en-passant square if such a capture was possible.
-            boolean printSquare = false;
-            int front = getPawnFront(getColorToPlay());
-            for (int column = -1; column <= 1; column += 2) {
-                Square square = enPassantSquare.offset(column, -front);
-                if (square == null) continue;
-                Piece piece = get(square);
-                if (piece == null) continue;
-                if (piece.getPieceType() == PieceType.Pawn && piece.getColor() == getColorToPlay()) {
-                    printSquare = true;
-                    break;
-                }
-            }
-            sb.append(printSquare ? enPassantSquare.toString() : '-');
+        if (position == beforeCastling) buffer[position++] = '-';
+        buffer[position++] = ' ';
+        boolean printSquare = enPassantSquare != -1;
+        // For repetition check, only print en-passant square if such a capture was possible.
+        if (forRepetition && printSquare) {
+            Color selfColor = getColorToPlay();
+            printSquare = (Bitboards.PawnAttacks[selfColor.opposite().ordinal()][enPassantSquare] & pieceBitboards[selfColor.ordinal()][PieceType.Pawn.ordinal()]) != 0;
         }
+        if (printSquare) {
+            buffer[position++] = Square.columnToChar(enPassantSquare % Constants.Columns);
+            buffer[position++] = Square.rowToChar(enPassantSquare / Constants.Columns);
+        } else
+            buffer[position++] = '-';
         // These fields do not matter for repetition check.
         if (!forRepetition) {
-            sb.append(' ');
-            sb.append(halfMoveClock);
-            sb.append(' ');
-            sb.append(1 + halfMoves / 2);
+            buffer[position++] = ' ';
+            position = writeNumber(buffer, position, halfMoveClock);
+            buffer[position++] = ' ';
+            position = writeNumber(buffer, position, 1 + halfMoves / 2);
         }
-        return sb.toString();
+        return position - offset;
+    }
+
+    private static int writeNumber(char[] buffer, int position, int value) {
+        int digits = 1;
+        for (int rest = value / 10; rest != 0; rest /= 10)
+            digits++;
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[position + i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    private String encodeFen(boolean forRepetition) {
+        char[] buffer = getFenBuffer();
+        return new String(buffer, 0, writeFen(buffer, 0, forRepetition));
+    }
+
+    // Scratch buffer for encoding, large enough for the current reserves.
+    private char[] getFenBuffer() {
+        int reserveCount = 0;
+        for (int color = 0; color < Constants.Colors; color++) {
+            for (int count : reservePieces[color])
+                reserveCount += count;
+        }
+        int length = Constants.MaxFenLength + Math.max(0, reserveCount - Constants.Squares);
+        if (fenBuffer == null || fenBuffer.length < length)
+            fenBuffer = new char[length];
+        return fenBuffer;
     }
 
     // Computes whether either side has enough material to deliver a checkmate in theory. https://en.wikipedia.org/wiki/Draw_(chess)#Draws_in_all_games
     public boolean hasSufficientMaterial() {
         // Can always drop pieces in crazyhouse.
         if (crazyHouse) return true;
-        
-        Piece lastPiece = null;
-        Square lastSquare = null;
-        for (int column = 0; column < Constants.Columns; column++) {
-            for (int row = 0; row < Constants.Rows; row++) {
-                Square square = new Square(column, row);
-                Piece piece = get(square);
-                if (piece == null) continue;
-                PieceType pieceType = piece.getPieceType();
-                if (pieceType == PieceType.King) continue;
-                // Those pieces are always enough.
-                if (pieceType == PieceType.Pawn || pieceType == PieceType.Rook || pieceType == PieceType.Queen)
-                    return true;
-                if (lastPiece == null) {
-                    lastPiece = piece;
-                    lastSquare = square;
-                    continue;
-                }
-                // Each side with one bishop on the same color is not enough.
-                if (lastPiece.getColor() != piece.getColor() && lastPiece.getPieceType() == PieceType.Bishop && piece.getPieceType() == PieceType.Bishop && lastSquare.isLight() == square.isLight())
-                    continue;
-                // Two pieces on board is otherwise enough.
-                return true;
-            }
-        }
+
+        int[] white = pieceCounts[Color.White.ordinal()], black = pieceCounts[Color.Black.ordinal()];
+        // Those pieces are always enough.
+        if (white[PieceType.Pawn.ordinal()] + black[PieceType.Pawn.ordinal()] + white[PieceType.Rook.ordinal()] + black[PieceType.Rook.ordinal()] + white[PieceType.Queen.ordinal()] + black[PieceType.Queen.ordinal()] != 0)
+            return true;
 
         // One or zero minor piece with no other piece is not enough to checkmate.
-        return false;
+        int whiteBishops = white[PieceType.Bishop.ordinal()], blackBishops = black[PieceType.Bishop.ordinal()];
+        int minors = white[PieceType.Knight.ordinal()] + black[PieceType.Knight.ordinal()] + whiteBishops + blackBishops;
+        if (minors <= 1)
+            return false;
+
+        // Each side with one bishop on the same color is not enough.
+        if (minors == 2 && whiteBishops == 1 && blackBishops == 1)
+            return bishopCounts[Color.White.ordinal()][1] != bishopCounts[Color.Black.ordinal()][1];
+
+        // Two pieces on board is otherwise enough.
+        return true;
     }
 
-    private void addRangeMoves(List<Move> moves, Square from, int limit, int deltaColumn, int deltaRow) {
-        Color selfColor = getColorToPlay();
-        Square to = from;
-        for (int range = 0; range < limit; range++) {
-            to = to.offset(deltaColumn, deltaRow);
-            if (to == null) return;
-            Piece toPiece = get(to);
-            if (toPiece == null || toPiece.getColor() != selfColor)
-                moves.add(new Move(from, to));
-            if (toPiece != null) return;
-        }
+    // Returns opponent pieces attacking a square for a given board occupancy.
+    private long getAttackers(int square, Color selfColor, long occupied) {
+        long[] opponentPieces = pieceBitboards[selfColor.opposite().ordinal()];
+        long queens = opponentPieces[PieceType.Queen.ordinal()];
+        return (Bitboards.PawnAttacks[selfColor.ordinal()][square] & opponentPieces[PieceType.Pawn.ordinal()])
+            | (Bitboards.KnightAttacks[square] & opponentPieces[PieceType.Knight.ordinal()])
+            | (Bitboards.KingAttacks[square] & opponentPieces[PieceType.King.ordinal()])
+            | (Bitboards.bishopAttacks(square, occupied) & (opponentPieces[PieceType.Bishop.ordinal()] | queens))
+            | (Bitboards.rookAttacks(square, occupied) & (opponentPieces[PieceType.Rook.ordinal()] | queens));
     }
 
-    private void addDiagonalMoves(List<Move> moves, Square from, int limit) {
-        addRangeMoves(moves, from, limit, -1, -1);
-        addRangeMoves(moves, from, limit, -1,  1);
-        addRangeMoves(moves, from, limit,  1, -1);
-        addRangeMoves(moves, from, limit,  1,  1);
+    // Check if a square can be attacked by an opponent piece.
+    private boolean isSquareAttacked(int square, Color selfColor) {
+        return getAttackers(square, selfColor, occupiedBitboard) != 0;
     }
 
-    private void addStraightMoves(List<Move> moves, Square from, int limit) {
-        addRangeMoves(moves, from, limit,  0, -1);
-        addRangeMoves(moves, from, limit,  0,  1);
-        addRangeMoves(moves, from, limit, -1,  0);
-        addRangeMoves(moves, from, limit,  1,  0);
+    // Returns all squares attacked by the pieces of a color, which are also the squares it defends.
+    public long getAttackedSquares(Color color) { return getAttackedSquares(color, occupiedBitboard); }
+
+    // Returns all squares attacked by the pieces of a color for a given board occupancy.
+    private long getAttackedSquares(Color color, long occupied) {
+        long[] pieces = pieceBitboards[color.ordinal()];
+        int front = getPawnFront(color) * Constants.Columns;
+        long pawns = pieces[PieceType.Pawn.ordinal()];
+        long attacked = Bitboards.shift(pawns & ~Bitboards.ColumnA, front - 1) | Bitboards.shift(pawns & ~Bitboards.ColumnH, front + 1);
+        for (long knights = pieces[PieceType.Knight.ordinal()]; knights != 0; knights &= knights - 1)
+            attacked |= Bitboards.KnightAttacks[Long.numberOfTrailingZeros(knights)];
+        long queens = pieces[PieceType.Queen.ordinal()];
+        for (long bishops = pieces[PieceType.Bishop.ordinal()] | queens; bishops != 0; bishops &= bishops - 1)
+            attacked |= Bitboards.bishopAttacks(Long.numberOfTrailingZeros(bishops), occupied);
+        for (long rooks = pieces[PieceType.Rook.ordinal()] | queens; rooks != 0; rooks &= rooks - 1)
+            attacked |= Bitboards.rookAttacks(Long.numberOfTrailingZeros(rooks), occupied);
+        if (kingSquares[color.ordinal()] != -1)
+            attacked |= Bitboards.KingAttacks[kingSquares[color.ordinal()]];
+        return attacked;
     }
 
-    // Check if a square can be attacked by an opponent piece.
-    private boolean isSquareAttacked(Square to, Color selfColor) {
-        // Check range in all directions.
-        for (int deltaColumn = -1; deltaColumn <= 1; deltaColumn++) {
-            for (int deltaRow = -1; deltaRow <= 1; deltaRow++) {
-                if (deltaRow == 0 && deltaColumn == 0) continue;
-                boolean isDiagonal = Math.abs(deltaRow) == Math.abs(deltaColumn);
-                Square from = to;
-                for (int range = 0; range < Constants.RangeLimit; range++) {
-                    from = from.offset(deltaColumn, deltaRow);
-                    if (from == null) break;
-                    Piece fromPiece = get(from);
-                    if (fromPiece == null) continue;
-                    if (fromPiece.getColor() == selfColor) break;
-
-                    PieceType pieceType = fromPiece.getPieceType();
-                    if (pieceType == PieceType.Pawn && isDiagonal && to.getRow() - from.getRow() == getPawnFront(selfColor.opposite()))
-                        return true;
-                    if (pieceType == PieceType.Queen || (pieceType == PieceType.King && range == 0))
-                        return true;
-                    if (pieceType == (isDiagonal ? PieceType.Bishop : PieceType.Rook))
-                        return true;
-                    break;
-                }
-            }
-        }
+    // Square index of the king of a color, tracked as pieces move.
+    public int getKingSquare(Color color) { return findKingSquare(color); }
+
+    private int findKingSquare(Color color) {
+        int square = kingSquares[color.ordinal()];
+        if (square == -1) throw new IllegalStateException("Unable to find own king");
+        return square;
+    }
 
-        // Check knights.
-        for (int i = 0; i < Constants.KnightMoves; i++) {
-            Square from = to.offset(Constants.KnightDeltaColumn[i], Constants.KnightDeltaRow[i]);
-            if (from == null) continue;
-            Piece fromPiece = get(from);
-            if (fromPiece != null && fromPiece.getColor() != selfColor && fromPiece.getPieceType() == PieceType.Knight)
-                return true;
+    // Returns whether the king of given color is under check.
+    public boolean isKingAttacked(Color color) {
+        return isSquareAttacked(findKingSquare(color), color);
+    }
+
+    // Returns own pieces that are the only piece between the king and an opponent slider.
+    private long getPinnedPieces(int kingSquare, Color selfColor) {
+        long[] opponentPieces = pieceBitboards[selfColor.opposite().ordinal()];
+        long queens = opponentPieces[PieceType.Queen.ordinal()];
+        long snipers = (Bitboards.rookAttacks(kingSquare, 0) & (opponentPieces[PieceType.Rook.ordinal()] | queens))
+            | (Bitboards.bishopAttacks(kingSquare, 0) & (opponentPieces[PieceType.Bishop.ordinal()] | queens));
+        long pinned = 0;
+        for (; snipers != 0; snipers &= snipers - 1) {
+            long between = Bitboards.Between[kingSquare][Long.numberOfTrailingZeros(snipers)] & occupiedBitboard;
+            if (Long.bitCount(between) == 1)
+                pinned |= between;
         }
+        return pinned & colorBitboards[selfColor.ordinal()];
+    }
 
-        return false;
+    // Adds a move from a square to every square of a bitboard.
+    private void addMoves(MoveList moves, int from, long targets) {
+        for (; targets != 0; targets &= targets - 1)
+            moves.add(PackedMove.create(from, Long.numberOfTrailingZeros(targets)));
     }
 
-    // Find the square where the king of given color is located. Cannot be null.
-    private Square findKingSquare(Color color) {
-        for (int column = 0; column < Constants.Columns; column++) {
-            for (int row = 0; row < Constants.Rows; row++) {
-                Square square = new Square(column, row);
-                Piece piece = get(square);
-                if (piece != null && piece.getColor() == color && piece.getPieceType() == PieceType.King)
-                    return square;
+    // Adds pawn moves to every square of a bitboard coming from the square delta behind, including promotions.
+    private void addPawnMoves(MoveList moves, long targets, int delta, long promotionRow) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            int from = to - delta;
+            // Handle promotion cases when pawn ends on opponent's initial row.
+            if ((promotionRow & (1L << to)) == 0)
+                moves.add(PackedMove.create(from, to));
+            else {
+                moves.add(PackedMove.createPromotion(from, to, PieceType.Knight));
+                moves.add(PackedMove.createPromotion(from, to, PieceType.Bishop));
+                moves.add(PackedMove.createPromotion(from, to, PieceType.Rook));
+                moves.add(PackedMove.createPromotion(from, to, PieceType.Queen));
             }
         }
-        throw new IllegalStateException("Unable to find own king");
     }
 
-    // Returns whether the king of given color is under check.
-    public boolean isKingAttacked(Color color) {
-        return isSquareAttacked(findKingSquare(color), color);
+    // Adds moves of the given pawns, pushes ending on pushMask and captures on captureMask, except en-passant captures.
+    private void addPawnMoves(MoveList moves, long pawns, Color selfColor, long pushMask, long captureMask) {
+        long empty = ~occupiedBitboard;
+        int front = getPawnFront(selfColor) * Constants.Columns;
+        long promotionRow = Bitboards.rowMask(getInitialRow(selfColor.opposite()));
+        // Move pawns ahead, and 2 squares from pawn row.
+        long pushes = Bitboards.shift(pawns, front) & empty;
+        long doublePushes = Bitboards.shift(pushes & Bitboards.rowMask(getPawnRow(selfColor) + getPawnFront(selfColor)), front) & empty;
+        addPawnMoves(moves, pushes & pushMask, front, promotionRow);
+        addPawnMoves(moves, doublePushes & pushMask, front * 2, promotionRow);
+        // Capture on diagonals.
+        long captures = colorBitboards[selfColor.opposite().ordinal()] & captureMask;
+        if (enPassantSquare != -1)
+            captures &= ~(1L << enPassantSquare);
+        addPawnMoves(moves, Bitboards.shift(pawns & ~Bitboards.ColumnA, front - 1) & captures, front - 1, promotionRow);
+        addPawnMoves(moves, Bitboards.shift(pawns & ~Bitboards.ColumnH, front + 1) & captures, front + 1, promotionRow);
+    }
+
+    // Adds drops of every reserve piece on the given empty squares.
+    // A drop cannot uncover the king, so restricting squares to blocking ones under check is the only legality test needed.
+    private void addDrops(MoveList moves, Color selfColor, long squares) {
+        int[] reserve = reservePieces[selfColor.ordinal()];
+        for (PieceType pieceType : Constants.ReservePieces) {
+            if (reserve[pieceType.ordinal()] == 0) continue;
+            long drops = pieceType == PieceType.Pawn ? squares & Bitboards.PawnDropSquares : squares;
+            for (; drops != 0; drops &= drops - 1)
+                moves.add(PackedMove.createDrop(Long.numberOfTrailingZeros(drops), pieceType));
+        }
+    }
+
+    // Adds a move if it does not leave the own king under check, by actually playing it.
+    private void addMoveIfLegal(MoveList moves, int move, Color selfColor) {
+        makeMove(move);
+        boolean legal = !isKingAttacked(selfColor);
+        unmakeMove();
+        if (legal)
+            moves.add(move);
     }
 
     // Generate all legal moves from current position.
-    public List<Move> generateMoves() {
-        List<Move> moves = new ArrayList<Move>();
+    public List<Move> generateMoves() { return getLegalMoves().toMoves(); }
+
+    // Legal moves of the current position, generated once until the position changes.
+    // The list belongs to the board: it must not be modified and is only valid until the next move.
+    public MoveList getLegalMoves() {
+        if (!legalMovesValid) {
+            if (legalMoves == null)
+                legalMoves = new MoveList();
+            generateMoves(legalMoves);
+            legalMovesValid = true;
+        }
+        return legalMoves;
+    }
+
+    // Returns whether the side to play has a legal move, without generating the list when a piece is found to have one.
+    // Only drops, knights, sliders and king moves are tested with masks, the rare positions without any fall back to the full generation.
+    public boolean hasAnyLegalMove() {
+        if (legalMovesValid)
+            return !legalMoves.isEmpty();
         Color selfColor = getColorToPlay();
-        Color opponentColor = selfColor.opposite();
+        long[] selfPieces = pieceBitboards[selfColor.ordinal()];
+        long targets = ~colorBitboards[selfColor.ordinal()];
+        int kingSquare = findKingSquare(selfColor);
+        long checkers = getAttackers(kingSquare, selfColor, occupiedBitboard);
+        long evasions = -1;
+        if (checkers != 0)
+            evasions = Long.bitCount(checkers) > 1 ? 0 : checkers | Bitboards.Between[kingSquare][Long.numberOfTrailingZeros(checkers)];
 
-        for (int fromColumn = 0; fromColumn < Constants.Columns; fromColumn++) {
-            for (int fromRow = 0; fromRow < Constants.Rows; fromRow++) {
-                Square from = new Square(fromColumn, fromRow);
-                Piece piece = get(from);
-
-                // Drop reserve pieces on empty squares.
-                if (crazyHouse && piece == null) {
-                    for (PieceType pieceType : Constants.ReservePieces) {
-                        if (getReserve(selfColor, pieceType) == 0) continue;
-                        // Cannot drop pawns on initial rows.
-                        if (pieceType == PieceType.Pawn && (fromRow == 0 || fromRow == Constants.Rows - 1)) continue;
-                        moves.add(new Move(null, from, pieceType));
-                    }
+        if (evasions != 0) {
+            long drops = ~occupiedBitboard & evasions;
+            if (crazyHouse && drops != 0) {
+                int[] reserve = reservePieces[selfColor.ordinal()];
+                for (PieceType pieceType : Constants.ReservePieces) {
+                    if (reserve[pieceType.ordinal()] != 0 && (pieceType != PieceType.Pawn || (drops & Bitboards.PawnDropSquares) != 0))
+                        return true;
                 }
+            }
+            long pinned = getPinnedPieces(kingSquare, selfColor);
+            for (long knights = selfPieces[PieceType.Knight.ordinal()] & ~pinned; knights != 0; knights &= knights - 1) {
+                if ((Bitboards.KnightAttacks[Long.numberOfTrailingZeros(knights)] & targets & evasions) != 0)
+                    return true;
+            }
+            long queens = selfPieces[PieceType.Queen.ordinal()];
+            for (long bishops = selfPieces[PieceType.Bishop.ordinal()] | queens; bishops != 0; bishops &= bishops - 1) {
+                int from = Long.numberOfTrailingZeros(bishops);
+                long mask = (pinned & (1L << from)) != 0 ? Bitboards.Line[kingSquare][from] : -1;
+                if ((Bitboards.bishopAttacks(from, occupiedBitboard) & targets & evasions & mask) != 0)
+                    return true;
+            }
+            for (long rooks = selfPieces[PieceType.Rook.ordinal()] | queens; rooks != 0; rooks &= rooks - 1) {
+                int from = Long.numberOfTrailingZeros(rooks);
+                long mask = (pinned & (1L << from)) != 0 ? Bitboards.Line[kingSquare][from] : -1;
+                if ((Bitboards.rookAttacks(from, occupiedBitboard) & targets & evasions & mask) != 0)
+                    return true;
+            }
+        }
+        long kingTargets = Bitboards.KingAttacks[kingSquare] & targets;
+        if (kingTargets != 0 && (kingTargets & ~getAttackedSquares(selfColor.opposite(), occupiedBitboard ^ (1L << kingSquare))) != 0)
+            return true;
 
-                if (piece == null || piece.getColor() != selfColor) continue;
-                PieceType pieceType = piece.getPieceType();
-
-                if (pieceType == PieceType.Pawn) {
-                    // Handle promotion cases when pawn ends on opponent's initial row.
-                    BiConsumer<Square, Square> addPromotionMoves = (Square f, Square t) -> {
-                        if (t.getRow() != getInitialRow(opponentColor))
-                            moves.add(new Move(f, t));
-                        else {
-                            moves.add(new Move(f, t, PieceType.Knight));
-                            moves.add(new Move(f, t, PieceType.Bishop));
-                            moves.add(new Move(f, t, PieceType.Rook));
-                            moves.add(new Move(f, t, PieceType.Queen));
-                        }
-                    };
-                    // Move pawn ahead.
-                    int front = getPawnFront(selfColor);
-                    Square to = from.offset(0, front);
-                    if (to != null && get(to) == null) {
-                        addPromotionMoves.accept(from, to);
-                        // Can move 2 squares from pawn row.
-                        if (from.getRow() == getPawnRow(selfColor)) {
-                            Square to2 = from.offset(0, front*2);
-                            if (to2 != null && get(to2) == null)
-                                moves.add(new Move(from, to2));
-                        }
-                    }
-                    // Pawn capture on diagonals including en-passant.
-                    for (int deltaColumn = -1; deltaColumn <= 1; deltaColumn += 2) {
-                        to = from.offset(deltaColumn, front);
-                        if (to == null) continue;
-                        Piece toPiece = get(to);
-                        if ((toPiece != null && toPiece.getColor() == opponentColor) || to.equals(enPassantSquare))
-                            addPromotionMoves.accept(from, to);
-                    }
-                } else if (pieceType == PieceType.Knight) {
-                    // Check all L shapes.
-                    for (int i = 0; i < Constants.KnightMoves; i++) {
-                        Square to = from.offset(Constants.KnightDeltaColumn[i], Constants.KnightDeltaRow[i]);
-                        if (to == null) continue;
-                        Piece toPiece = get(to);
-                        if (toPiece != null && toPiece.getColor() == selfColor) continue;
-                        moves.add(new Move(from, to));
-                    }
-                } else if (pieceType == PieceType.Bishop)
-                    addDiagonalMoves(moves, from, Constants.RangeLimit);
-                else if (pieceType == PieceType.Rook)
-                    addStraightMoves(moves, from, Constants.RangeLimit);
-                else if (pieceType == PieceType.Queen) {
-                    addDiagonalMoves(moves, from, Constants.RangeLimit);
-                    addStraightMoves(moves, from, Constants.RangeLimit);
-                } else if (pieceType == PieceType.King) {
-                    addDiagonalMoves(moves, from, 1);
-                    addStraightMoves(moves, from, 1);
-                    // Check for castling move.
-                    for (Castling castling : castlings) {
-                        if (!castling.isAllowed(selfColor)) continue;
-                        int rookFromColumn = castling.getColumn();
-                        int kingFromColumn = fromColumn;
-                        boolean queenCastling = rookFromColumn < kingFromColumn;
-                        int deltaColumn = queenCastling ? -1 : 1;
-                        int rookToColumn = queenCastling ? Constants.QueenCastlingRookColumn : Constants.KingCastlingRookColumn;
-                        int kingToColumn = queenCastling ? Constants.QueenCastlingKingColumn : Constants.KingCastlingKingColumn;
-
-                        boolean valid = true;
-                        // The final squares must not be occupied by other pieces.
-                        valid &= rookToColumn == kingFromColumn || rookToColumn == rookFromColumn || get(new Square(rookToColumn, fromRow)) == null;
-                        valid &= kingToColumn == kingFromColumn || kingToColumn == rookFromColumn || get(new Square(kingToColumn, fromRow)) == null;
-                        // There must be no piece obstructing between king and rook.
-                        for (int column = kingFromColumn + deltaColumn; valid && column != rookFromColumn; column += deltaColumn)
-                            valid &= get(new Square(column, fromRow)) == null;
-                        // There must be no enemy piece attacking the squares between king's initial and final position.
-                        for (int column = kingFromColumn; valid && column != kingToColumn + deltaColumn; column += deltaColumn)
-                            valid &= !isSquareAttacked(new Square(column, fromRow), selfColor);
-                        if (valid)
-                            moves.add(new Move(from, new Square(rookFromColumn, fromRow)));
-                    }
-                }
+        // Pawns and castlings are left to the whole generation, which is kept.
+        return !getLegalMoves().isEmpty();
+    }
+
+    // Fills the list with all legal moves from current position, without allocating.
+    public void generateMoves(MoveList moves) { generateMoves(moves, MoveStages.All); }
+
+    // Fills the list with the legal moves of the given stages, see MoveStages.
+    // Checkers and pinned pieces are computed once so that only king moves, en-passant and castlings need an actual legality test.
+    public void generateMoves(MoveList moves, int stages) {
+        moves.clear();
+        Color selfColor = getColorToPlay();
+        long[] selfPieces = pieceBitboards[selfColor.ordinal()];
+        long empty = ~occupiedBitboard;
+        boolean captureStage = (stages & MoveStages.Captures) != 0, quietStage = (stages & MoveStages.Quiets) != 0;
+        long targets = (captureStage ? colorBitboards[selfColor.opposite().ordinal()] : 0) | (quietStage ? empty : 0);
+        // Promotions are generated with captures.
+        long promotionRow = Bitboards.rowMask(getInitialRow(selfColor.opposite()));
+        long pushMask = (captureStage ? promotionRow : 0) | (quietStage ? ~promotionRow : 0);
+        long captureMask = captureStage ? -1 : 0;
+
+        int kingSquare = findKingSquare(selfColor);
+        long checkers = getAttackers(kingSquare, selfColor, occupiedBitboard);
+        long pinned = getPinnedPieces(kingSquare, selfColor);
+        // Other pieces must capture the checker or block it, they cannot help against a double check.
+        long evasions = -1;
+        if (checkers != 0)
+            evasions = Long.bitCount(checkers) > 1 ? 0 : checkers | Bitboards.Between[kingSquare][Long.numberOfTrailingZeros(checkers)];
+
+        // King moves to squares which are not attacked once it has left its square.
+        // Without the king, sliders checking it also attack the squares behind it, and castling is only checked when there is no such slider.
+        long kingTargets = Bitboards.KingAttacks[kingSquare] & targets;
+        long attacked = kingTargets != 0 || (quietStage && checkers == 0) ? getAttackedSquares(selfColor.opposite(), occupiedBitboard ^ (1L << kingSquare)) : 0;
+        addMoves(moves, kingSquare, kingTargets & ~attacked);
+
+        if (evasions != 0) {
+            if (crazyHouse && (stages & MoveStages.Drops) != 0)
+                addDrops(moves, selfColor, empty & evasions);
+
+            // Pinned pieces can only move along the line between their king and the pinning piece.
+            long pawns = selfPieces[PieceType.Pawn.ordinal()];
+            addPawnMoves(moves, pawns & ~pinned, selfColor, evasions & pushMask, evasions & captureMask);
+            for (long pinnedPawns = pawns & pinned; pinnedPawns != 0; pinnedPawns &= pinnedPawns - 1) {
+                int from = Long.numberOfTrailingZeros(pinnedPawns);
+                long line = evasions & Bitboards.Line[kingSquare][from];
+                addPawnMoves(moves, 1L << from, selfColor, line & pushMask, line & captureMask);
+            }
+            // En-passant can uncover the king in ways pins do not capture.
+            if (enPassantSquare != -1 && captureStage) {
+                for (long captures = Bitboards.PawnAttacks[selfColor.opposite().ordinal()][enPassantSquare] & pawns; captures != 0; captures &= captures - 1)
+                    addMoveIfLegal(moves, PackedMove.create(Long.numberOfTrailingZeros(captures), enPassantSquare), selfColor);
+            }
+
+            for (long knights = selfPieces[PieceType.Knight.ordinal()] & ~pinned; knights != 0; knights &= knights - 1) {
+                int from = Long.numberOfTrailingZeros(knights);
+                addMoves(moves, from, Bitboards.KnightAttacks[from] & targets & evasions);
+            }
+            for (long bishops = selfPieces[PieceType.Bishop.ordinal()]; bishops != 0; bishops &= bishops - 1) {
+                int from = Long.numberOfTrailingZeros(bishops);
+                long mask = (pinned & (1L << from)) != 0 ? Bitboards.Line[kingSquare][from] : -1;
+                addMoves(moves, from, Bitboards.bishopAttacks(from, occupiedBitboard) & targets & evasions & mask);
+            }
+            for (long rooks = selfPieces[PieceType.Rook.ordinal()]; rooks != 0; rooks &= rooks - 1) {
+                int from = Long.numberOfTrailingZeros(rooks);
+                long mask = (pinned & (1L << from)) != 0 ? Bitboards.Line[kingSquare][from] : -1;
+                addMoves(moves, from, Bitboards.rookAttacks(from, occupiedBitboard) & targets & evasions & mask);
+            }
+            for (long queens = selfPieces[PieceType.Queen.ordinal()]; queens != 0; queens &= queens - 1) {
+                int from = Long.numberOfTrailingZeros(queens);
+                long mask = (pinned & (1L << from)) != 0 ? Bitboards.Line[kingSquare][from] : -1;
+                addMoves(moves, from, Bitboards.queenAttacks(from, occupiedBitboard) & targets & evasions & mask);
             }
         }
 
-        // Remove moves that would leave the king under check.
-        moves.removeIf(move -> {
-            Board nextBoard = new Board(this);
-            nextBoard.applyMoveUnsafe(move);
-            return nextBoard.isKingAttacked(selfColor);
-        });
+        // Check for castling move, never allowed under check.
+        if (checkers == 0 && quietStage) {
+            int fromColumn = kingSquare % Constants.Columns;
+            int rowStart = kingSquare - fromColumn;
+            for (Castling castling : castlings) {
+                if (!castling.isAllowed(selfColor)) continue;
+                int rookFromColumn = castling.getColumn();
+                int kingFromColumn = fromColumn;
+                boolean queenCastling = rookFromColumn < kingFromColumn;
+                int deltaColumn = queenCastling ? -1 : 1;
+                int rookToColumn = queenCastling ? Constants.QueenCastlingRookColumn : Constants.KingCastlingRookColumn;
+                int kingToColumn = queenCastling ? Constants.QueenCastlingKingColumn : Constants.KingCastlingKingColumn;
 
-        return moves;
+                boolean valid = true;
+                // The final squares must not be occupied by other pieces.
+                valid &= rookToColumn == kingFromColumn || rookToColumn == rookFromColumn || cells[rowStart + rookToColumn] == null;
+                valid &= kingToColumn == kingFromColumn || kingToColumn == rookFromColumn || cells[rowStart + kingToColumn] == null;
+                // There must be no piece obstructing between king and rook.
+                for (int column = kingFromColumn + deltaColumn; valid && column != rookFromColumn; column += deltaColumn)
+                    valid &= cells[rowStart + column] == null;
+                // There must be no enemy piece attacking the squares between king's initial and final position.
+                // In Chess960 the king can move away from the rook so walk in its own direction.
+                int kingDeltaColumn = kingToColumn < kingFromColumn ? -1 : 1;
+                for (int column = kingFromColumn; valid && column != kingToColumn + kingDeltaColumn; column += kingDeltaColumn)
+                    valid &= (attacked & (1L << (rowStart + column))) == 0;
+                // In Chess960 the rook may have been shielding the king's final square.
+                if (valid)
+                    addMoveIfLegal(moves, PackedMove.createCastling(kingSquare, rowStart + rookFromColumn), selfColor);
+            }
+        }
     }
 
     public boolean isMoveCastling(Move move) {
@@ -491,21 +791,151 @@ public class Board {
         return fromPiece.getPieceType() == PieceType.King && toPiece != null && toPiece.getPieceType() == PieceType.Rook && toPiece.getColor() == fromPiece.getColor();
     }
 
+    // Converts a move object to its packed form in this position, PackedMove.None if it cannot designate a move.
+    public int encodeMove(Move move) {
+        int to = move.getTo().getIndex();
+        if (move.getFrom() == null)
+            return move.getPieceType().isPresent() ? PackedMove.createDrop(to, move.getPieceType().get()) : PackedMove.None;
+        int from = move.getFrom().getIndex();
+        if (from == to)
+            return PackedMove.None;
+        if (move.getPieceType().isPresent())
+            return PackedMove.createPromotion(from, to, move.getPieceType().get());
+        if (cells[from] != null && isMoveCastling(move))
+            return PackedMove.createCastling(from, to);
+        return PackedMove.create(from, to);
+    }
+
     // Simply performs a move assuming it is **valid** and **legal**!
-    public void applyMoveUnsafe(Move move) {
+    public void applyMoveUnsafe(Move move) { applyMoveUnsafe(encodeMove(move)); }
+
+    public void applyMoveUnsafe(int move) {
         highlightSquares.clear();
+        int from = PackedMove.getFrom(move), to = PackedMove.getTo(move);
+        if (PackedMove.isCastling(move)) {
+            int row = getInitialRow(getColorToPlay());
+            boolean queenCastling = to < from;
+            highlightSquares.add(Square.of(queenCastling ? Constants.QueenCastlingRookColumn : Constants.KingCastlingRookColumn, row));
+            highlightSquares.add(Square.of(queenCastling ? Constants.QueenCastlingKingColumn : Constants.KingCastlingKingColumn, row));
+        }
+        if (!PackedMove.isDrop(move)) highlightSquares.add(Square.fromIndex(from));
+        highlightSquares.add(Square.fromIndex(to));
+
+        doMove(move, appliedUndo);
+    }
+
+    // Performs a move assuming it is **valid** and **legal**, it can be taken back with unmakeMove.
+    public void makeMove(Move move) { makeMove(encodeMove(move)); }
+
+    public void makeMove(int move) {
+        if (undoCount == undoStack.length)
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+        if (undoStack[undoCount] == null)
+            undoStack[undoCount] = new UndoRecord();
+        doMove(move, undoStack[undoCount++]);
+    }
 
-        Square from = move.getFrom(), to = move.getTo();
-        Piece fromPiece = from != null ? get(from) : null, toPiece = get(to);
+    // Takes back the last move performed with makeMove.
+    public void unmakeMove() {
+        UndoRecord undo = undoStack[--undoCount];
+        halfMoves--;
+        Color selfColor = getColorToPlay();
+        int move = undo.move;
+        int to = PackedMove.getTo(move);
+
+        if (PackedMove.isCastling(move)) {
+            int row = getInitialRow(selfColor) * Constants.Columns;
+            boolean queenCastling = to < PackedMove.getFrom(move);
+            set(row + (queenCastling ? Constants.QueenCastlingRookColumn : Constants.KingCastlingRookColumn), null);
+            set(row + (queenCastling ? Constants.QueenCastlingKingColumn : Constants.KingCastlingKingColumn), null);
+        }
+        set(to, undo.toPiece);
+        if (!PackedMove.isDrop(move))
+            set(PackedMove.getFrom(move), undo.movedPiece);
+        if (undo.enPassantCapture != -1)
+            set(undo.enPassantCapture, undo.enPassantPiece);
+        if (undo.reservePieceType != null)
+            changeReserve(selfColor, undo.reservePieceType, -undo.reserveDelta);
+
+        setCastlingRights(undo.castlingRights);
+        enPassantSquare = undo.enPassantSquare;
+        halfMoveClock = undo.halfMoveClock;
+        hash = undo.hash;
+
+        fenString = null;
+        repetitionFenString = null;
+
+        // Legal moves of the position taken back are kept in case the same move is made again, such as after getAlgebraicMoveUnsafe.
+        MoveList spare = childMoves;
+        childMoves = legalMoves;
+        childMovesValid = legalMovesValid;
+        childMove = move;
+        legalMoves = undo.legalMoves;
+        legalMovesValid = undo.legalMovesValid;
+        undo.legalMoves = spare;
+    }
+
+    // Castling rights packed as one bit per castling and color.
+    private int getCastlingRights() {
+        int rights = 0;
+        for (int i = 0; i < castlings.size(); i++) {
+            for (Color color : Color.values()) {
+                if (castlings.get(i).isAllowed(color))
+                    rights |= 1 << (i * Constants.Colors + color.ordinal());
+            }
+        }
+        return rights;
+    }
+
+    private void setCastlingRights(int rights) {
+        for (int i = 0; i < castlings.size(); i++) {
+            for (Color color : Color.values())
+                castlings.get(i).setAllowed(color, (rights & (1 << (i * Constants.Colors + color.ordinal()))) != 0);
+        }
+    }
+
+    // Updates the position for a move and records in undo what is needed to take it back.
+    private void doMove(int move, UndoRecord undo) {
+        int from = PackedMove.isDrop(move) ? -1 : PackedMove.getFrom(move), to = PackedMove.getTo(move);
+        Piece fromPiece = from != -1 ? cells[from] : null, toPiece = cells[to];
         Color selfColor = getColorToPlay();
         Color opponentColor = selfColor.opposite();
 
-        if (from == null) {
+        undo.move = move;
+        undo.movedPiece = fromPiece;
+        undo.toPiece = toPiece;
+        undo.enPassantCapture = -1;
+        undo.castlingRights = getCastlingRights();
+        undo.enPassantSquare = enPassantSquare;
+        undo.halfMoveClock = halfMoveClock;
+        undo.hash = hash;
+        undo.reservePieceType = null;
+
+        fenString = null;
+        repetitionFenString = null;
+
+        // Legal moves of the position are kept for unmakeMove, the ones of the new position may already be known.
+        MoveList parentMoves = legalMoves;
+        undo.legalMovesValid = legalMovesValid;
+        legalMovesValid = childMovesValid && childMove == move;
+        childMovesValid = false;
+        if (legalMovesValid) {
+            legalMoves = childMoves;
+            childMoves = undo.legalMoves;
+        } else
+            legalMoves = undo.legalMoves;
+        undo.legalMoves = parentMoves;
+
+        if (from == -1) {
             if (!crazyHouse) throw new IllegalArgumentException("Attempted to apply a drop piece move in a non-crazyhouse game.");
-            PieceType pieceType = move.getPieceType().get();
-            set(move.getTo(), new Piece(pieceType, selfColor));
-            addReserve(selfColor, pieceType, -1);
+            PieceType pieceType = PackedMove.getPieceType(move);
+            set(to, Piece.of(pieceType, selfColor));
+            changeReserve(selfColor, pieceType, -1);
+            undo.reservePieceType = pieceType;
+            undo.reserveDelta = -1;
         } else {
+            int fromColumn = from % Constants.Columns, fromRow = from / Constants.Columns;
+            int toColumn = to % Constants.Columns, toRow = to / Constants.Columns;
             if (fromPiece != null) {
                 // When king moves, invalidate its castlings.
                 if (fromPiece.getPieceType() == PieceType.King) {
@@ -514,62 +944,65 @@ public class Board {
                 }
 
                 // If rook moved from initial position, invalidate its castling.
-                if (fromPiece.getPieceType() == PieceType.Rook && from.getRow() == getInitialRow(selfColor)) {
+                if (fromPiece.getPieceType() == PieceType.Rook && fromRow == getInitialRow(selfColor)) {
                     for (Castling castling : castlings) {
-                        if (castling.getColumn() != from.getColumn()) continue;
+                        if (castling.getColumn() != fromColumn) continue;
                         castling.setAllowed(selfColor, false);
                     }
                 }
 
                 // Pawn moving to en-passant square implies it captured en-passant.
-                if (enPassantSquare != null && fromPiece.getPieceType() == PieceType.Pawn && to.equals(enPassantSquare))
-                    set(new Square(to.getColumn(), from.getRow()), null);
+                if (enPassantSquare != -1 && fromPiece.getPieceType() == PieceType.Pawn && to == enPassantSquare) {
+                    undo.enPassantCapture = fromRow * Constants.Columns + toColumn;
+                    undo.enPassantPiece = cells[undo.enPassantCapture];
+                    set(undo.enPassantCapture, null);
+                }
 
                 // Update en-passant square if pawn moved 2 rows.
-                enPassantSquare = null;
-                if (fromPiece.getPieceType() == PieceType.Pawn && Math.abs(from.getRow() - to.getRow()) == 2)
-                    enPassantSquare = new Square(from.getColumn(), (from.getRow() + to.getRow()) / 2);
+                enPassantSquare = -1;
+                if (fromPiece.getPieceType() == PieceType.Pawn && Math.abs(fromRow - toRow) == 2)
+                    enPassantSquare = (from + to) / 2;
             }
 
             // A captured rook on its initial row invalidates its castling.
-            if (toPiece != null && toPiece.getPieceType() == PieceType.Rook && toPiece.getColor() == opponentColor && to.getRow() == getInitialRow(opponentColor)) {
+            if (toPiece != null && toPiece.getPieceType() == PieceType.Rook && toPiece.getColor() == opponentColor && toRow == getInitialRow(opponentColor)) {
                 for (Castling castling : castlings) {
-                    if (castling.getColumn() != to.getColumn()) continue;
+                    if (castling.getColumn() != toColumn) continue;
                     castling.setAllowed(opponentColor, false);
                 }
             }
 
             // Update the board.
-            if (isMoveCastling(move)) {
+            if (PackedMove.isCastling(move)) {
                 set(from, null);
                 set(to, null);
-                int row = getInitialRow(selfColor);
-                boolean queenCastling = to.getColumn() < from.getColumn();
-                Square rookSquare = new Square(queenCastling ? Constants.QueenCastlingRookColumn : Constants.KingCastlingRookColumn, row);
-                Square kingSquare = new Square(queenCastling ? Constants.QueenCastlingKingColumn : Constants.KingCastlingKingColumn, row);
-                set(rookSquare, toPiece);
-                set(kingSquare, fromPiece);
-                highlightSquares.add(rookSquare);
-                highlightSquares.add(kingSquare);
+                int row = getInitialRow(selfColor) * Constants.Columns;
+                boolean queenCastling = toColumn < fromColumn;
+                set(row + (queenCastling ? Constants.QueenCastlingRookColumn : Constants.KingCastlingRookColumn), toPiece);
+                set(row + (queenCastling ? Constants.QueenCastlingKingColumn : Constants.KingCastlingKingColumn), fromPiece);
             } else {
                 // Add captured piece to reserve in crazyhouse.
                 if (crazyHouse && toPiece != null) {
                     PieceType pieceType = toPiece.getPieceType();
                     if (toPiece.isPromoted())
                         pieceType = PieceType.Pawn;
-                    addReserve(selfColor, pieceType, 1);
+                    changeReserve(selfColor, pieceType, 1);
+                    undo.reservePieceType = pieceType;
+                    undo.reserveDelta = 1;
                 }
 
-                if (move.getPieceType().isPresent())
-                    set(move.getTo(), new Piece(move.getPieceType().get(), selfColor, true));
+                if (PackedMove.isPromotion(move))
+                    set(to, Piece.of(PackedMove.getPieceType(move), selfColor, true));
                 else
-                    set(move.getTo(), get(move.getFrom()));
-                set(move.getFrom(), null);
+                    set(to, fromPiece);
+                set(from, null);
             }
         }
 
-        if (from != null) highlightSquares.add(from);
-        highlightSquares.add(to);
+        int castlingRights = getCastlingRights();
+        if (castlingRights != undo.castlingRights)
+            hash ^= getCastlingHash(undo.castlingRights) ^ getCastlingHash(castlingRights);
+        hash ^= Zobrist.BlackToPlay;
 
         // Update clocks.
         // Halfmove clock is reset when a pawn moves or a capture occurs.
@@ -582,59 +1015,149 @@ public class Board {
 
     // To be called on the position before the move is made, assuming it is **valid** and **legal**!
     // https://en.wikipedia.org/wiki/Algebraic_notation_(chess)
-    public String getAlgebraicMoveUnsafe(Move move) {
+    public String getAlgebraicMoveUnsafe(Move move) { return getAlgebraicMoveUnsafe(encodeMove(move)); }
+
+    public String getAlgebraicMoveUnsafe(int move) {
         StringBuilder sb = new StringBuilder();
-        if (move.getFrom() == null) {
-            sb.append(move.getPieceType().get().toChar());
+        int from = PackedMove.getFrom(move), to = PackedMove.getTo(move);
+        int fromColumn = from % Constants.Columns, fromRow = from / Constants.Columns;
+        if (PackedMove.isDrop(move)) {
+            sb.append(PackedMove.getPieceType(move).toChar());
             sb.append('@');
-            sb.append(move.getTo().toString());
-        } else if (isMoveCastling(move))
-            sb.append(move.getTo().getColumn() < move.getFrom().getColumn() ? "O-O-O" : "O-O");
+            sb.append(Square.fromIndex(to).toString());
+        } else if (PackedMove.isCastling(move))
+            sb.append(to < from ? "O-O-O" : "O-O");
         else {
-            Piece fromPiece = get(move.getFrom());
-            Piece toPiece = get(move.getTo());
-            boolean takes = toPiece != null || (fromPiece.getPieceType() == PieceType.Pawn && move.getFrom().getColumn() != move.getTo().getColumn());
+            Piece fromPiece = cells[from];
+            Piece toPiece = cells[to];
+            boolean takes = toPiece != null || (fromPiece.getPieceType() == PieceType.Pawn && fromColumn != to % Constants.Columns);
 
             if (fromPiece.getPieceType() != PieceType.Pawn) {
                 sb.append(fromPiece.getPieceType().toChar());
                 // Check for disambiguation.
-                List<Move> moves = generateMoves();
-                moves.removeIf(x -> x.getFrom() == null || !x.getTo().equals(move.getTo()) || get(x.getFrom()).getPieceType() != fromPiece.getPieceType());
-                if (moves.size() > 1) {
-                    moves.removeIf(x -> x.getFrom().getColumn() != move.getFrom().getColumn());
-                    if (moves.size() == 1)
-                        sb.append(Square.columnToChar(move.getFrom().getColumn()));
+                MoveList moves = getLegalMoves();
+                int count = 0, sameColumn = 0, sameRow = 0;
+                for (int i = 0; i < moves.size(); i++) {
+                    int other = moves.get(i);
+                    if (PackedMove.isDrop(other) || PackedMove.getTo(other) != to) continue;
+                    int otherFrom = PackedMove.getFrom(other);
+                    if (cells[otherFrom].getPieceType() != fromPiece.getPieceType()) continue;
+                    count++;
+                    if (otherFrom % Constants.Columns == fromColumn)
+                        sameColumn++;
+                    if (otherFrom / Constants.Columns == fromRow)
+                        sameRow++;
+                }
+                if (count > 1) {
+                    if (sameColumn == 1)
+                        sb.append(Square.columnToChar(fromColumn));
+                    else if (sameRow == 1)
+                        sb.append(Square.rowToChar(fromRow));
                     else {
-                        moves.removeIf(x -> x.getFrom().getRow() != move.getFrom().getRow());
-                        if (moves.size() == 1)
-                            sb.append(Square.rowToChar(move.getFrom().getRow()));
-                        else {
-                            sb.append(Square.columnToChar(move.getFrom().getColumn()));
-                            sb.append(Square.rowToChar(move.getFrom().getRow()));
-                        }
+                        sb.append(Square.columnToChar(fromColumn));
+                        sb.append(Square.rowToChar(fromRow));
                     }
                 }
             } else if (takes)
-                sb.append(Square.columnToChar(move.getFrom().getColumn()));
+                sb.append(Square.columnToChar(fromColumn));
             if (takes)
                 sb.append('x');
-            sb.append(move.getTo().toString());
+            sb.append(Square.fromIndex(to).toString());
 
-            if (move.getPieceType().isPresent()) {
+            if (PackedMove.isPromotion(move)) {
                 sb.append('=');
-                sb.append(move.getPieceType().get().toChar());
+                sb.append(PackedMove.getPieceType(move).toChar());
             }
         }
 
-        Board nextBoard = new Board(this);
-        nextBoard.applyMoveUnsafe(move);
-        if (nextBoard.isKingAttacked(nextBoard.getColorToPlay())) {
-            if (nextBoard.generateMoves().size() == 0)
+        makeMove(move);
+        if (isKingAttacked(getColorToPlay())) {
+            // The whole list is generated rather than using hasAnyLegalMove since unmakeMove keeps it for the position after the move,
+            // which the referee applies next and checks the following move against.
+            if (getLegalMoves().isEmpty())
                 sb.append('#'); // Checkmate
             else
                 sb.append('+'); // Check
         }
+        unmakeMove();
 
         return sb.toString();
     }
+
+    // Resolves a move in algebraic notation, as written by getAlgebraicMoveUnsafe, to a legal move of this position.
+    // The piece, destination and disambiguation only narrow bitboards of candidate origins, no notation is built for the legal moves.
+    public int parseAlgebraicMove(CharSequence san, int start, int end) throws ParseException {
+        // Check and annotation symbols are not needed to find the move.
+        while (end > start && "+#!?".indexOf(san.charAt(end - 1)) >= 0)
+            end--;
+        if (start == end) throw new ParseException("Move is empty.", start);
+        MoveList moves = getLegalMoves();
+
+        char first = san.charAt(start);
+        if (first == 'O' || first == '0') {
+            boolean queenCastling;
+            if (end - start == 3)
+                queenCastling = false;
+            else if (end - start == 5)
+                queenCastling = true;
+            else
+                throw new ParseException(String.format("'%s' is not a castling.", san.subSequence(start, end)), start);
+            for (int i = 0; i < moves.size(); i++) {
+                int move = moves.get(i);
+                if (PackedMove.isCastling(move) && (PackedMove.getTo(move) < PackedMove.getFrom(move)) == queenCastling)
+                    return move;
+            }
+            throw new ParseException(String.format("'%s' is not a legal move.", san.subSequence(start, end)), start);
+        }
+
+        int i = start;
+        PieceType pieceType = PieceType.Pawn;
+        if (Character.isUpperCase(first)) {
+            pieceType = PieceType.fromChar(first);
+            i++;
+        }
+        if (i < end && san.charAt(i) == '@') {
+            if (end - i != 3) throw new ParseException(String.format("'%s' is not a drop.", san.subSequence(start, end)), start);
+            int move = PackedMove.createDrop(parseSquare(san, i + 1), pieceType);
+            if (!moves.contains(move)) throw new ParseException(String.format("'%s' is not a legal move.", san.subSequence(start, end)), start);
+            return move;
+        }
+
+        PieceType promotion = null;
+        if (end - i > 2 && Character.isUpperCase(san.charAt(end - 1))) {
+            promotion = PieceType.fromChar(san.charAt(end - 1));
+            end -= san.charAt(end - 2) == '=' ? 2 : 1;
+        }
+        if (end - i < 2) throw new ParseException(String.format("'%s' has no destination.", san.subSequence(start, end)), start);
+        int to = parseSquare(san, end - 2);
+        long origins = pieceBitboards[getColorToPlay().ordinal()][pieceType.ordinal()];
+        for (; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h')
+                origins &= Bitboards.columnMask(c - 'a');
+            else if (c >= '1' && c <= '8')
+                origins &= Bitboards.rowMask(c - '1');
+            else if (c != 'x' && c != ':')
+                throw new ParseException(String.format("Unexpected character '%c' in '%s'.", c, san.subSequence(start, end)), i);
+        }
+
+        int found = PackedMove.None;
+        for (int j = 0; j < moves.size(); j++) {
+            int move = moves.get(j);
+            if (PackedMove.getTo(move) != to || (origins & (1L << PackedMove.getFrom(move))) == 0 || PackedMove.isCastling(move) || PackedMove.isDrop(move)) continue;
+            if (promotion == null ? PackedMove.isPromotion(move) : !PackedMove.isPromotion(move) || PackedMove.getPieceType(move) != promotion) continue;
+            if (found != PackedMove.None) throw new ParseException(String.format("'%s' is ambiguous.", san.subSequence(start, end)), start);
+            found = move;
+        }
+        if (found == PackedMove.None) throw new ParseException(String.format("'%s' is not a legal move.", san.subSequence(start, end)), start);
+        return found;
+    }
+
+    private static int parseSquare(CharSequence san, int offset) throws ParseException {
+        try {
+            return Square.charToRow(san.charAt(offset + 1)) * Constants.Columns + Square.charToColumn(san.charAt(offset));
+        } catch (ParseException e) {
+            throw new ParseException(e.getMessage(), offset);
+        }
+    }
 }
@@ -3,8 +3,10 @@ package cc.recursive.chess;
 public class Constants {
     public static final int Columns = 8;
     public static final int Rows = 8;
+    public static final int Squares = Columns * Rows;
     public static final int RangeLimit = 7;
     public static final int Colors = 2;
+    public static final int PieceTypes = 6;
     public static final int Castlings = 2;
 
     public static final int QueenCastlingKingColumn = 2;
@@ -14,9 +16,20 @@ public class Constants {
     public static final int KnightMoves = 8;
     public static final int[] KnightDeltaColumn = {-1,  1, -2,  2, -2,  2, -1,  1};
     public static final int[] KnightDeltaRow    = {-2, -2, -1, -1,  1,  1,  2,  2};
+    // Straight directions come first, followed by diagonal ones, and opposite directions are next to each other.
+    public static final int Directions = 8;
+    public static final int StraightDirections = 4;
+    public static final int[] DirectionDeltaColumn = { 0,  0, -1,  1, -1,  1, -1,  1};
+    public static final int[] DirectionDeltaRow    = {-1,  1,  0,  0, -1,  1,  1, -1};
+
+    // Usual piece values in pawns, indexed by piece type, the king is not counted.
+    public static final int[] PieceValues = { 1, 3, 3, 5, 9, 0 };
 
     public static final PieceType[] ReservePieces = { PieceType.Pawn, PieceType.Knight, PieceType.Bishop, PieceType.Rook, PieceType.Queen };
 
+    // Longest FEN string with at most as many reserve pieces as squares.
+    public static final int MaxFenLength = 256;
+
     public static final int MaxMovesPerGame = 125;
     public static final int MaxCommentLength = 30;
 }
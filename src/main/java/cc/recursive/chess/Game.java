@@ -1,35 +1,85 @@
 package cc.recursive.chess;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.text.ParseException;
+import java.util.Arrays;
 
 public class Game {
     private Board board;
-    private List<String> positionHistory = new ArrayList<String>();
+    // Start position, either a seed given to Board or a FEN string when not null.
+    private final long seed;
+    private final String startFen;
+    // Moves played so far, in order.
+    private MoveList moves = new MoveList();
+    // Hashes of all positions reached so far, in order.
+    private long[] positionHistory = new long[Constants.MaxMovesPerGame * 2 + 1];
+    private int positionCount = 0;
+    // Comment of each move played so far, null when none or when no move has one.
+    private String[] comments = null;
     private GameResult gameResult = GameResult.Undecided;
+    // Timings of the referee, which applyMove splits between its own phases, null when not timed.
+    private PhaseTimings timings = null;
+    // Endgame tables adjudicating positions they cover, null to play them out.
+    private Tablebase tablebase = null;
 
     public Game(long seed, boolean crazyHouse) {
         board = new Board(seed, crazyHouse);
-        positionHistory.add(board.toFenString(true));
+        this.seed = seed;
+        this.startFen = null;
+        addPosition();
+    }
+
+    public Game(String fen, boolean crazyHouse) throws ParseException {
+        board = new Board(fen, crazyHouse);
+        this.seed = 0;
+        this.startFen = fen;
+        addPosition();
     }
 
     public Board getBoard() { return board; }
+    public long getSeed() { return seed; }
+    public String getStartFen() { return startFen; }
+    // Packed moves played so far, the list must not be modified.
+    public MoveList getMoves() { return moves; }
+    public void setTimings(PhaseTimings timings) { this.timings = timings; }
+    public void setTablebase(Tablebase tablebase) { this.tablebase = tablebase; }
+
+    public String getComment(int ply) { return comments != null && ply < comments.length ? comments[ply] : null; }
+    public void setComment(int ply, String comment) {
+        if (comments == null)
+            comments = new String[Math.max(Constants.MaxMovesPerGame * 2, ply + 1)];
+        else if (ply >= comments.length)
+            comments = Arrays.copyOf(comments, Math.max(comments.length * 2, ply + 1));
+        comments[ply] = comment;
+    }
 
     public ViewData applyMove(Move move) throws GameException {
-        List<Move> moves = board.generateMoves();
-        if (!moves.contains(move)) throw new GameException(String.format("'%s' is not a legal move", move.toString()));
+        int packedMove = board.encodeMove(move);
+        if (!board.getLegalMoves().contains(packedMove)) throw new GameException(String.format("'%s' is not a legal move", move.toString()));
+
+        if (timings != null) timings.lap(PhaseTimings.Phase.ApplyMove);
 
         ViewData viewData = new ViewData();
-        viewData.setMove(board, move);
+        viewData.setMove(board, packedMove);
+        if (timings != null) timings.lap(PhaseTimings.Phase.Algebraic);
 
-        board.applyMoveUnsafe(move);
-        positionHistory.add(board.toFenString(true));
+        board.applyMoveUnsafe(packedMove);
+        moves.add(packedMove);
+        addPosition();
+        if (timings != null) timings.lap(PhaseTimings.Phase.ApplyMove);
 
         viewData.setBoard(board);
         viewData.setHighlights(board);
+        if (timings != null) timings.lap(PhaseTimings.Phase.View);
         return viewData;
     }
 
+    // Applies a move already known to be legal, such as one of a verified record, without checking it or building view data.
+    public void applyMoveTrusted(int packedMove) {
+        board.applyMoveUnsafe(packedMove);
+        moves.add(packedMove);
+        addPosition();
+    }
+
     public ViewData getViewData() {
         ViewData viewData = new ViewData();
         viewData.setBoard(board);
@@ -44,20 +94,29 @@ public class Game {
 
     public void setGameResult(GameResult gameResult) { this.gameResult = gameResult; }
 
+    private void addPosition() {
+        if (positionCount == positionHistory.length)
+            positionHistory = Arrays.copyOf(positionHistory, positionCount * 2);
+        positionHistory[positionCount++] = board.getHash();
+    }
+
     private GameResult computeGameResult() {
         // No move possible means checkmate or stalemate.
-        if (board.generateMoves().size() == 0) {
+        // The whole list is generated rather than using hasAnyLegalMove since the next move is checked against it anyway.
+        if (board.getLegalMoves().isEmpty()) {
             if (board.isKingAttacked(board.getColorToPlay()))
                 return board.getColorToPlay() == Color.White ? GameResult.BlackWins : GameResult.WhiteWins;
             return GameResult.Stalemate;
         }
 
-        // Check for threefold repetition.
-        if (positionHistory.size() > 0) {
+        // Check for threefold repetition among positions with the same color to play.
+        // A capture or pawn advance cannot be undone so older positions are skipped, except in crazyhouse where captured pieces can come back.
+        if (positionCount > 0) {
             int count = 0;
-            String lastPosition = positionHistory.get(positionHistory.size() - 1);
-            for (int i = 0; i < positionHistory.size() - 1; i++) {
-                if (!positionHistory.get(i).equals(lastPosition)) continue;
+            long lastPosition = positionHistory[positionCount - 1];
+            int first = board.isCrazyHouse() ? 0 : Math.max(0, positionCount - 1 - board.getHalfMoveClock());
+            for (int i = positionCount - 3; i >= first; i -= 2) {
+                if (positionHistory[i] != lastPosition) continue;
                 count++;
                 if (count == 2)
                     return GameResult.Repetition;
@@ -73,6 +132,9 @@ public class Game {
         if (board.getHalfMoves() >= Constants.MaxMovesPerGame * 2)
             return GameResult.ForcedDraw;
 
+        if (tablebase != null)
+            return tablebase.getGameResult(board);
+
         return GameResult.Undecided;
     }
 }
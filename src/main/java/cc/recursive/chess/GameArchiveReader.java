@@ -0,0 +1,104 @@
+package cc.recursive.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Reads games from an archive written by GameArchiveWriter through a memory mapping, so the file itself is never copied on heap.
+// Only the offset of each record is kept, found by skipping from record to record when opening.
+// Reads use absolute positions and may be done from several threads.
+public class GameArchiveReader implements Closeable, Iterable<GameRecord> {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int[] offsets = new int[1024];
+    private int gameCount = 0;
+
+    public GameArchiveReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("Archives larger than 2GB are not supported, split them.");
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < GameArchiveWriter.HeaderLength || buffer.getInt(0) != GameArchiveWriter.Magic) throw new IOException("Not a game archive.");
+        if (buffer.getShort(4) != GameArchiveWriter.Version) throw new IOException(String.format("Unsupported game archive version %d.", buffer.getShort(4)));
+
+        int offset = GameArchiveWriter.HeaderLength;
+        while (offset + 4 <= size) {
+            int length = buffer.getInt(offset);
+            // A record cut short by an interrupted append is ignored, as is everything after a corrupt length.
+            if (length < 0 || length > size - offset - 4) break;
+            int end = offset + 4 + length;
+            if (gameCount == offsets.length)
+                offsets = Arrays.copyOf(offsets, gameCount * 2);
+            offsets[gameCount++] = offset;
+            offset = end;
+        }
+    }
+
+    public int size() { return gameCount; }
+
+    public GameRecord get(int index) {
+        if (index < 0 || index >= gameCount) throw new IndexOutOfBoundsException(String.format("Game %d is not in the archive.", index));
+        int offset = offsets[index] + 4;
+        int flags = buffer.get(offset);
+        GameResult result = GameResult.values()[buffer.get(offset + 1)];
+        int plyCount = buffer.getChar(offset + 2);
+        offset += 4;
+
+        long seed = 0;
+        String startFen = null;
+        if ((flags & GameArchiveWriter.StartFenFlag) != 0) {
+            int length = buffer.getChar(offset);
+            startFen = decode(offset + 2, length, true);
+            offset += 2 + length;
+        } else {
+            seed = buffer.getLong(offset);
+            offset += 8;
+        }
+
+        int[] moves = new int[plyCount];
+        for (int ply = 0; ply < plyCount; ply++, offset += 2)
+            moves[ply] = buffer.getChar(offset);
+        GameRecord record = new GameRecord(seed, startFen, (flags & GameArchiveWriter.CrazyHouseFlag) != 0, moves, result);
+
+        int commentCount = buffer.getChar(offset);
+        offset += 2;
+        int text = offset + commentCount * 6;
+        int start = 0;
+        for (int i = 0; i < commentCount; i++, offset += 6) {
+            int end = buffer.getInt(offset + 2);
+            record.setComment(buffer.getChar(offset), decode(text + start, end - start, false));
+            start = end;
+        }
+        return record;
+    }
+
+    private String decode(int offset, int length, boolean ascii) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(offset + i);
+        return new String(bytes, ascii ? StandardCharsets.US_ASCII : StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Iterator<GameRecord> iterator() {
+        return new Iterator<GameRecord>() {
+            private int index = 0;
+
+            @Override public boolean hasNext() { return index < gameCount; }
+            @Override public GameRecord next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return get(index++);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException { channel.close(); }
+}
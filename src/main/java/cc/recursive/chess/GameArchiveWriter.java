@@ -0,0 +1,133 @@
+package cc.recursive.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends games to a binary archive, creating it when missing and dropping a record cut short by a crash when reopening it.
+// Archives are read with GameArchiveReader.
+//
+// The file starts with the magic number and a version, followed by game records:
+//   int    length of the rest of the record in bytes
+//   byte   flags, see CrazyHouseFlag and StartFenFlag
+//   byte   GameResult ordinal
+//   short  ply count
+//   long   seed, or short length and ASCII bytes of the start FEN with StartFenFlag
+//   short  packed move of each ply
+//   short  comment count, then ply and end offset in the comment text of each comment
+//   bytes  UTF-8 comment text
+// Numbers are big-endian and counts are unsigned.
+public class GameArchiveWriter implements Closeable {
+    static final int Magic = 0x43474152; // CGAR
+    static final short Version = 1;
+    static final int HeaderLength = 6;
+    static final int CrazyHouseFlag = 1;
+    static final int StartFenFlag = 2;
+
+    private final FileChannel channel;
+    // Reused between records, grown when a record does not fit.
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    public GameArchiveWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HeaderLength);
+                header.putInt(Magic).putShort(Version).flip();
+                write(header);
+            } else
+                channel.position(truncateToLastRecord());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Drops a record cut short by an interrupted append, so that new records are not appended after it, and returns the new size.
+    private long truncateToLastRecord() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HeaderLength);
+        if (size < HeaderLength || read(header, 0) != HeaderLength || header.getInt(0) != Magic) throw new IOException("Not a game archive.");
+        if (header.getShort(4) != Version) throw new IOException(String.format("Unsupported game archive version %d.", header.getShort(4)));
+
+        ByteBuffer length = ByteBuffer.allocate(4);
+        long offset = HeaderLength;
+        while (offset + 4 <= size) {
+            length.clear();
+            read(length, offset);
+            // Same checks as GameArchiveReader, so that the file keeps exactly the records it reads.
+            if (length.getInt(0) < 0 || length.getInt(0) > size - offset - 4) break;
+            offset += 4 + length.getInt(0);
+        }
+        if (offset < size)
+            channel.truncate(offset);
+        return offset;
+    }
+
+    // Reads until the buffer is full or the end of the file, returning the number of bytes read.
+    private int read(ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) break;
+        }
+        return bytes.position();
+    }
+
+    public void append(Game game) throws IOException { append(GameRecord.fromGame(game)); }
+
+    public synchronized void append(GameRecord record) throws IOException {
+        if (record.getPlyCount() > 0xFFFF) throw new IllegalArgumentException("Too many plies to archive the game.");
+        byte[] fen = record.getStartFen() != null ? record.getStartFen().getBytes(StandardCharsets.US_ASCII) : null;
+        int commentCount = 0;
+        int commentLength = 0;
+        byte[][] comments = new byte[record.getPlyCount()][];
+        for (int ply = 0; ply < record.getPlyCount(); ply++) {
+            String comment = record.getComment(ply);
+            if (comment == null) continue;
+            comments[ply] = comment.getBytes(StandardCharsets.UTF_8);
+            commentCount++;
+            commentLength += comments[ply].length;
+        }
+
+        int length = 1 + 1 + 2 + (fen != null ? 2 + fen.length : 8) + record.getPlyCount() * 2 + 2 + commentCount * 6 + commentLength;
+        if (buffer.capacity() < 4 + length)
+            buffer = ByteBuffer.allocate(Math.max(4 + length, buffer.capacity() * 2));
+        buffer.clear();
+        buffer.putInt(length);
+        buffer.put((byte)((record.isCrazyHouse() ? CrazyHouseFlag : 0) | (fen != null ? StartFenFlag : 0)));
+        buffer.put((byte)record.getResult().ordinal());
+        buffer.putShort((short)record.getPlyCount());
+        if (fen != null) {
+            buffer.putShort((short)fen.length);
+            buffer.put(fen);
+        } else
+            buffer.putLong(record.getSeed());
+        for (int ply = 0; ply < record.getPlyCount(); ply++)
+            buffer.putShort((short)record.getMove(ply));
+        buffer.putShort((short)commentCount);
+        int end = 0;
+        for (int ply = 0; ply < record.getPlyCount(); ply++) {
+            if (comments[ply] == null) continue;
+            end += comments[ply].length;
+            buffer.putShort((short)ply);
+            buffer.putInt(end);
+        }
+        for (byte[] comment : comments) {
+            if (comment != null)
+                buffer.put(comment);
+        }
+        buffer.flip();
+        write(buffer);
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+
+    @Override
+    public synchronized void close() throws IOException { channel.close(); }
+}
@@ -0,0 +1,52 @@
+package cc.recursive.chess;
+
+import java.util.Random;
+
+// What an agent knows besides the position on its turn, and the actions it may take instead of or along with its move.
+public class GameContext {
+    private final Move lastMove;
+    private final boolean drawOffered;
+    private final int gameNumber;
+    private final int score, opponentScore;
+    private final Random random;
+    private boolean drawOffer = false;
+    private boolean drawAcceptance = false;
+    private boolean resignation = false;
+    private String comment = null;
+
+    public GameContext(Move lastMove, boolean drawOffered, int gameNumber, int score, int opponentScore, Random random) {
+        this.lastMove = lastMove;
+        this.drawOffered = drawOffered;
+        this.gameNumber = gameNumber;
+        this.score = score;
+        this.opponentScore = opponentScore;
+        this.random = random;
+    }
+
+    // Last move of the opponent, null at the start of a game.
+    public Move getLastMove() { return lastMove; }
+    // Whether the opponent offered a draw with its last move.
+    public boolean isDrawOffered() { return drawOffered; }
+    // Game number within the match, starting at 1.
+    public int getGameNumber() { return gameNumber; }
+    public int getScore() { return score; }
+    public int getOpponentScore() { return opponentScore; }
+    // Random number generator of the match, used for the protocol 'random' command.
+    public Random getRandom() { return random; }
+
+    // Offers a draw along with the move played.
+    public void offerDraw() { drawOffer = true; }
+    // Accepts the draw offered by the opponent, only valid when isDrawOffered.
+    public void acceptDraw() { drawAcceptance = true; }
+    public void resign() { resignation = true; }
+    // Comment shown along with the move, cut to the length the referee keeps.
+    public void setComment(String comment) {
+        this.comment = comment != null && comment.length() > Constants.MaxCommentLength ? comment.substring(0, Constants.MaxCommentLength) : comment;
+    }
+
+    public boolean hasOfferedDraw() { return drawOffer; }
+    public boolean hasAcceptedDraw() { return drawAcceptance; }
+    public boolean hasResigned() { return resignation; }
+    // Comment of the move played, null when none.
+    public String getComment() { return comment; }
+}
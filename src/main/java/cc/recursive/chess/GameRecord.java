@@ -0,0 +1,71 @@
+package cc.recursive.chess;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+// Compact description of a finished game: start position, packed moves, result and optional comments per ply.
+public class GameRecord {
+    private final long seed;
+    // Start position as FEN, null when the game started from the seed.
+    private final String startFen;
+    private final boolean crazyHouse;
+    private final int[] moves;
+    private final GameResult result;
+    // Comment of each ply, null when none or when the game has no comments at all.
+    private String[] comments = null;
+
+    public GameRecord(long seed, String startFen, boolean crazyHouse, int[] moves, GameResult result) {
+        this.seed = seed;
+        this.startFen = startFen;
+        this.crazyHouse = crazyHouse;
+        this.moves = moves;
+        this.result = result;
+    }
+
+    public static GameRecord fromGame(Game game) {
+        MoveList moveList = game.getMoves();
+        int[] moves = new int[moveList.size()];
+        for (int i = 0; i < moves.length; i++)
+            moves[i] = moveList.get(i);
+        GameRecord record = new GameRecord(game.getSeed(), game.getStartFen(), game.getBoard().isCrazyHouse(), moves, game.getGameResult());
+        for (int ply = 0; ply < moves.length; ply++) {
+            if (game.getComment(ply) != null)
+                record.setComment(ply, game.getComment(ply));
+        }
+        return record;
+    }
+
+    public long getSeed() { return seed; }
+    public String getStartFen() { return startFen; }
+    public boolean isCrazyHouse() { return crazyHouse; }
+    public GameResult getResult() { return result; }
+    public int getPlyCount() { return moves.length; }
+    // Packed move of a ply, see PackedMove.
+    public int getMove(int ply) { return moves[ply]; }
+
+    public String getComment(int ply) { return comments != null ? comments[ply] : null; }
+    public void setComment(int ply, String comment) {
+        if (comments == null)
+            comments = new String[moves.length];
+        comments[ply] = comment;
+    }
+
+    // Plays the game again from its start position, checking every move.
+    public Game replay() throws GameException, ParseException {
+        Game game = startFen != null ? new Game(startFen, crazyHouse) : new Game(seed, crazyHouse);
+        for (int move : moves)
+            game.applyMove(PackedMove.toMove(move));
+        if (game.getGameResult() == GameResult.Undecided)
+            game.setGameResult(result);
+        return game;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (o == this) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GameRecord other = (GameRecord)o;
+        return seed == other.seed && (startFen == null ? other.startFen == null : startFen.equals(other.startFen)) && crazyHouse == other.crazyHouse
+            && Arrays.equals(moves, other.moves) && result == other.result && Arrays.equals(comments, other.comments);
+    }
+    @Override public int hashCode() { return Arrays.hashCode(moves) * 31 + result.hashCode(); }
+}
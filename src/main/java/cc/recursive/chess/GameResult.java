@@ -12,4 +12,8 @@ public enum GameResult {
     DrawByAgreement,
     WhiteResigns,
     BlackResigns,
+    // Adjudicated by Game from endgame tables.
+    WhiteWinsByTablebase,
+    BlackWinsByTablebase,
+    TablebaseDraw,
 }
@@ -0,0 +1,99 @@
+package cc.recursive.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Two games between agents from the same start position with colors swapped, played and scored as the referee does.
+public class Match {
+    private final long seed;
+    private final boolean crazyHouse;
+    // Random number generator used for the 'random' command.
+    private final Random rng;
+    // Scores of both players, -1 for a player eliminated by an error.
+    private final int[] scores = new int[2];
+    private final List<GameResult> gameResults = new ArrayList<GameResult>();
+    // Games played, including one interrupted by an error.
+    private final List<Game> games = new ArrayList<Game>();
+    // Player eliminated by an error and its description, -1 and null when none.
+    private int failedPlayer = -1;
+    private String error = null;
+    // Endgame tables adjudicating games, null to play them out.
+    private Tablebase tablebase = null;
+
+    public Match(long seed, boolean crazyHouse) {
+        this.seed = seed;
+        this.crazyHouse = crazyHouse;
+        this.rng = new Random(seed);
+    }
+
+    public int getScore(int player) { return scores[player]; }
+    // Results of the games played, in order.
+    public List<GameResult> getGameResults() { return gameResults; }
+    public List<Game> getGames() { return games; }
+    public int getFailedPlayer() { return failedPlayer; }
+    public String getError() { return error; }
+    public void setTablebase(Tablebase tablebase) { this.tablebase = tablebase; }
+
+    // Player index of a color, players swap colors on the second game.
+    public static int getPlayerFromColor(Color color, int gameCount) {
+        return color == Color.White ? gameCount % 2 : 1 - gameCount % 2;
+    }
+
+    // Player index winning a game, -1 for a draw.
+    public static int getWinner(GameResult result, int gameCount) {
+        if (result == GameResult.WhiteWins || result == GameResult.BlackResigns || result == GameResult.WhiteWinsByTablebase)
+            return getPlayerFromColor(Color.White, gameCount);
+        if (result == GameResult.BlackWins || result == GameResult.WhiteResigns || result == GameResult.BlackWinsByTablebase)
+            return getPlayerFromColor(Color.Black, gameCount);
+        return -1;
+    }
+
+    public void play(Agent agent1, Agent agent2) {
+        Agent[] agents = { agent1, agent2 };
+        for (int gameCount = 0; gameCount < 2; gameCount++) {
+            Game game = new Game(seed, crazyHouse);
+            game.setTablebase(tablebase);
+            games.add(game);
+            Move lastMove = null;
+            boolean drawOffered = false;
+            while (game.getGameResult() == GameResult.Undecided) {
+                Board board = game.getBoard();
+                int player = getPlayerFromColor(board.getColorToPlay(), gameCount);
+                GameContext context = new GameContext(lastMove, drawOffered, gameCount + 1, scores[player], scores[1 - player], rng);
+                try {
+                    Move move = agents[player].play(new Board(board), board.generateMoves(), context);
+                    // Check if a draw offer was accepted.
+                    if (drawOffered && context.hasAcceptedDraw())
+                        game.setGameResult(GameResult.DrawByAgreement);
+                    // Check if the game was resigned.
+                    else if (context.hasResigned())
+                        game.setGameResult(board.getColorToPlay() == Color.White ? GameResult.WhiteResigns : GameResult.BlackResigns);
+                    else {
+                        if (move == null) throw new GameException("No move was played");
+                        drawOffered = context.hasOfferedDraw();
+                        lastMove = move;
+                        game.applyMove(move);
+                        if (context.getComment() != null && !context.getComment().isEmpty())
+                            game.setComment(game.getMoves().size() - 1, context.getComment());
+                    }
+                } catch (GameException | RuntimeException e) {
+                    failedPlayer = player;
+                    error = String.format("%s (%s)", e.getMessage(), board.toFenString(false));
+                    scores[player] = -1;
+                    return;
+                }
+            }
+
+            GameResult result = game.getGameResult();
+            gameResults.add(result);
+            int winner = getWinner(result, gameCount);
+            if (winner != -1)
+                scores[winner] += 2;
+            else {
+                scores[0]++;
+                scores[1]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package cc.recursive.chess;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Plays matches between two agents without the CodinGame engine, following the same protocol and scoring as the referee.
+// Agents are either programs, run on reusable processes, or classes implementing Agent called in-process. Matches run concurrently.
+public class MatchRunner {
+    // Pool of processes for each program agent, null for in-process agents.
+    private final AgentPool[] pools = new AgentPool[2];
+    // Classes of in-process agents, instantiated for each match, null for program agents.
+    private final Class<?>[] agentClasses = new Class<?>[2];
+    private final String[] names = new String[2];
+    private final boolean crazyHouse;
+    // Milliseconds allowed for the configuration turn and the first game turn of a process, which include its start up, and for the other turns.
+    private final long configurationTimeout;
+    private final long turnTimeout;
+    // Archive receiving every game played, null when games are not kept.
+    private GameArchiveWriter archive = null;
+    // Endgame tables adjudicating games, null to play them out.
+    private Tablebase tablebase = null;
+
+    // Totals over all matches, from the point of view of the first agent.
+    private final int[] matchWins = new int[2];
+    private int matchDraws = 0;
+    private final int[] gameWins = new int[2];
+    private int gameDraws = 0;
+    private final int[] errors = new int[2];
+    private final Map<GameResult, Integer> gameResults = new EnumMap<GameResult, Integer>(GameResult.class);
+    private final List<String> errorMessages = new ArrayList<String>();
+
+    // Each agent is either a command line or, prefixed with "class:", the name of a class implementing Agent.
+    public MatchRunner(String agent1, String agent2, boolean crazyHouse, long configurationTimeout, long turnTimeout) throws ClassNotFoundException {
+        String[] agents = { agent1, agent2 };
+        for (int i = 0; i < 2; i++) {
+            names[i] = agents[i];
+            if (agents[i].startsWith("class:")) {
+                agentClasses[i] = Class.forName(agents[i].substring("class:".length()));
+                if (!Agent.class.isAssignableFrom(agentClasses[i])) throw new IllegalArgumentException(String.format("%s does not implement Agent.", agentClasses[i].getName()));
+            } else
+                pools[i] = new AgentPool(Arrays.asList(agents[i].trim().split(" +")));
+        }
+        this.crazyHouse = crazyHouse;
+        this.configurationTimeout = configurationTimeout;
+        this.turnTimeout = turnTimeout;
+    }
+
+    public void setArchive(GameArchiveWriter archive) { this.archive = archive; }
+    public void setTablebase(Tablebase tablebase) { this.tablebase = tablebase; }
+
+    private void playMatch(long seed) throws IOException, ReflectiveOperationException {
+        Match match = new Match(seed, crazyHouse);
+        match.setTablebase(tablebase);
+        Agent[] agents = new Agent[2];
+        AgentProcess[] processes = new AgentProcess[2];
+        try {
+            for (int i = 0; i < 2; i++) {
+                if (pools[i] != null) {
+                    processes[i] = pools[i].acquire();
+                    agents[i] = new ProcessAgent(processes[i], configurationTimeout, turnTimeout);
+                } else
+                    agents[i] = (Agent)agentClasses[i].getDeclaredConstructor().newInstance();
+            }
+            match.play(agents[0], agents[1]);
+        } finally {
+            for (int i = 0; i < 2; i++) {
+                if (processes[i] == null) continue;
+                // A process which failed may still be writing its answer, it cannot be reused.
+                if (i == match.getFailedPlayer())
+                    pools[i].discard(processes[i]);
+                else
+                    pools[i].release(processes[i]);
+            }
+        }
+        addMatch(match);
+        if (archive != null) {
+            for (Game game : match.getGames())
+                archive.append(game);
+        }
+    }
+
+    private synchronized void addMatch(Match match) {
+        for (int gameCount = 0; gameCount < match.getGameResults().size(); gameCount++) {
+            GameResult result = match.getGameResults().get(gameCount);
+            Integer count = gameResults.get(result);
+            gameResults.put(result, count == null ? 1 : count + 1);
+            int winner = Match.getWinner(result, gameCount);
+            if (winner != -1)
+                gameWins[winner]++;
+            else
+                gameDraws++;
+        }
+        if (match.getFailedPlayer() != -1) {
+            errors[match.getFailedPlayer()]++;
+            errorMessages.add(String.format("Agent %d eliminated: %s", match.getFailedPlayer() + 1, match.getError()));
+        }
+        if (match.getScore(0) == match.getScore(1))
+            matchDraws++;
+        else
+            matchWins[match.getScore(0) > match.getScore(1) ? 0 : 1]++;
+    }
+
+    // Plays matches with consecutive seeds, seed 0 being the classic start position and others Chess960 ones.
+    public void run(int matchCount, long firstSeed, boolean classic, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < matchCount; i++) {
+                long seed = classic ? 0 : firstSeed + i;
+                futures.add(executor.submit(() -> {
+                    playMatch(seed);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            for (AgentPool pool : pools) {
+                if (pool != null)
+                    pool.close();
+            }
+        }
+    }
+
+    public synchronized void printSummary(PrintWriter out, double seconds) {
+        int matches = matchWins[0] + matchWins[1] + matchDraws;
+        int games = gameWins[0] + gameWins[1] + gameDraws;
+        out.println(String.format("Agent 1: %s", names[0]));
+        out.println(String.format("Agent 2: %s", names[1]));
+        out.println(String.format("Matches: %d, W/D/L %d/%d/%d", matches, matchWins[0], matchDraws, matchWins[1]));
+        out.println(String.format("Games: %d, W/D/L %d/%d/%d", games, gameWins[0], gameDraws, gameWins[1]));
+        out.println(String.format("Errors: agent 1 %d, agent 2 %d", errors[0], errors[1]));
+        for (Map.Entry<GameResult, Integer> entry : gameResults.entrySet())
+            out.println(String.format("  %s: %d", entry.getKey(), entry.getValue()));
+        out.println(String.format("Time: %.1fs, %.0f games/hour", seconds, games * 3600 / seconds));
+        for (String message : errorMessages)
+            out.println(message);
+        out.flush();
+    }
+
+    // Usage: MatchRunner [-matches N] [-threads N] [-seed S] [-classic] [-crazyhouse] [-timeout ms] [-configtimeout ms] [-out file] [-archive file] [-tablebase directory] agent1 agent2
+    // Agents are command lines such as "java -cp target/test-classes RandomAgent", or class names such as class:RandomAgent.
+    public static void main(String[] args) throws InterruptedException, IOException, ClassNotFoundException {
+        int matchCount = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        boolean classic = false, crazyHouse = false;
+        long turnTimeout = 1000, configurationTimeout = 10000;
+        String outFile = null, archiveFile = null, tablebaseDirectory = null;
+        List<String> agents = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-matches"))
+                matchCount = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seed"))
+                seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-classic"))
+                classic = true;
+            else if (args[i].equals("-crazyhouse"))
+                crazyHouse = true;
+            else if (args[i].equals("-timeout"))
+                turnTimeout = Long.parseLong(args[++i]);
+            else if (args[i].equals("-configtimeout"))
+                configurationTimeout = Long.parseLong(args[++i]);
+            else if (args[i].equals("-out"))
+                outFile = args[++i];
+            else if (args[i].equals("-archive"))
+                archiveFile = args[++i];
+            else if (args[i].equals("-tablebase"))
+                tablebaseDirectory = args[++i];
+            else
+                agents.add(args[i]);
+        }
+        if (agents.size() != 2) throw new IllegalArgumentException("Expected two agents.");
+
+        MatchRunner runner = new MatchRunner(agents.get(0), agents.get(1), crazyHouse, configurationTimeout, turnTimeout);
+        if (archiveFile != null)
+            runner.setArchive(new GameArchiveWriter(Paths.get(archiveFile)));
+        if (tablebaseDirectory != null)
+            runner.setTablebase(new Tablebase(new File(tablebaseDirectory)));
+        long start = System.nanoTime();
+        try {
+            runner.run(matchCount, seed, classic, threads);
+        } finally {
+            if (runner.archive != null)
+                runner.archive.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        runner.printSummary(new PrintWriter(System.out), seconds);
+        if (outFile != null) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(outFile))) {
+                runner.printSummary(out, seconds);
+            }
+        }
+    }
+}
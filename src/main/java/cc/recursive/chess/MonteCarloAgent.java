@@ -0,0 +1,101 @@
+package cc.recursive.chess;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+
+// Opponent playing with MonteCarloSearch on every core, either in process through Agent or as a program speaking the referee protocol.
+// Meant for crazyhouse, where drops make the branching factor too high and evaluations too unreliable for SearchAgent.
+public class MonteCarloAgent implements Agent, Protocol.Player {
+    // Share of the turn limit spent searching, playouts are short enough to stop close to the deadline.
+    private static final double TurnShare = 0.6;
+
+    private final MonteCarloSearch search;
+    private final long turnMillis;
+
+    public MonteCarloAgent() { this(SearchAgent.TurnMillis, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 4); }
+    public MonteCarloAgent(long turnMillis, int threads, long maxTreeBytes) {
+        this.turnMillis = turnMillis;
+        search = new MonteCarloSearch(threads, maxTreeBytes);
+    }
+
+    public MonteCarloSearch getSearch() { return search; }
+
+    @Override
+    public Move play(Board board, List<Move> legalMoves, GameContext context) {
+        Move move = PackedMove.toMove(think(board, context.getGameNumber()));
+        context.setComment(getComment());
+        return move;
+    }
+
+    @Override
+    public void warmUp(Board board) { search.search(board, SearchAgent.FirstTurnMillis * 300000L); }
+
+    // The tree is rebuilt on every move, so positions of previous games do not matter.
+    @Override
+    public int think(Board board, int gameNumber) {
+        MoveList legalMoves = board.getLegalMoves();
+        // With a single legal move there is nothing to sample.
+        if (legalMoves.size() == 1)
+            return legalMoves.get(0);
+        int move = search.search(board, (long)(turnMillis * TurnShare * 1e6));
+        return move != PackedMove.None ? move : legalMoves.get(0);
+    }
+
+    @Override
+    public String getReport() {
+        return String.format("playouts %d time %.1fms %d playouts/s threads %d tree %d nodes %.1fMB score %.2f", search.getPlayouts(), search.getElapsedNanos() / 1e6,
+            search.getPlayoutsPerSecond(), search.getThreads(), search.getTreeNodes(), search.getTreeBytes() / 1e6, search.getScore());
+    }
+
+    @Override
+    public String getComment() {
+        return String.format("%.0f%% %dk/s", search.getScore() * 100, search.getPlayoutsPerSecond() / 1000);
+    }
+
+    // Searches positions for a fixed time to measure playout speed and tree growth, after a first pass warming up the JIT.
+    private static void bench(long millis, int threads, long maxTreeBytes) throws ParseException {
+        String[] crazyHouseFens = {
+            new Board(0, true).toFenString(false),
+            "r2qk2r/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2QK2R/NBPnbp w AHah - 0 7",
+            "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1/QRRBBNNPPPPqrrbbnnpppp w - - 0 8",
+        };
+        MonteCarloAgent agent = new MonteCarloAgent(millis, threads, maxTreeBytes);
+        long playouts = 0, nanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (String fen : crazyHouseFens) {
+                agent.search.search(new Board(fen, true), millis * 1000000L);
+                if (pass == 0) continue;
+                System.out.println(String.format("%s: %s", fen, agent.getReport()));
+                playouts += agent.search.getPlayouts();
+                nanos += agent.search.getElapsedNanos();
+            }
+        }
+        System.out.println(String.format("Total: %d playouts in %.1fms, %d playouts/s", playouts, nanos / 1e6, nanos > 0 ? playouts * 1000000000L / nanos : 0));
+    }
+
+    // Usage: MonteCarloAgent [-threads N] [-tree MB] [-turn millis] [-bench [millis]]
+    // Without -bench, plays as a program through Protocol.play, like SearchAgent.
+    public static void main(String[] args) throws IOException, ParseException {
+        long turnMillis = SearchAgent.TurnMillis;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxTreeBytes = Runtime.getRuntime().maxMemory() / 4;
+        long benchMillis = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-tree"))
+                maxTreeBytes = Long.parseLong(args[++i]) << 20;
+            else if (args[i].equals("-turn"))
+                turnMillis = Long.parseLong(args[++i]);
+            else if (args[i].equals("-bench"))
+                benchMillis = i + 1 < args.length && args[i + 1].matches("\\d+") ? Long.parseLong(args[++i]) : 1000;
+        }
+        if (benchMillis > 0) {
+            bench(benchMillis, threads, maxTreeBytes);
+            return;
+        }
+
+        Protocol.play(new MonteCarloAgent(turnMillis, threads, maxTreeBytes), "fen");
+    }
+}
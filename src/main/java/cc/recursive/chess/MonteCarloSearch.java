@@ -0,0 +1,258 @@
+package cc.recursive.chess;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// Monte Carlo tree search with random playouts under the referee rules, cut after PlayoutPlies plies where material decides.
+// Threads share one tree: node statistics are updated with atomic operations and virtual losses steer threads apart.
+// https://www.chessprogramming.org/Monte-Carlo_Tree_Search
+public class MonteCarloSearch {
+    // Exploration constant of the UCT formula.
+    private static final double Exploration = 1.4;
+    // Playouts counted against a node while a thread is below it, so that other threads prefer its siblings.
+    private static final int VirtualLoss = 1;
+    // Estimated sizes with compressed references: a node and the header of the array of children.
+    private static final int NodeBytes = 40;
+    private static final int ArrayBytes = 16;
+    // Results in half points for the side which moved into a node.
+    private static final int Win = 2;
+    private static final int Draw = 1;
+    private static final int Loss = 0;
+    // Longest game allowed by the referee, which bounds both tree paths and playouts.
+    private static final int MaxPlies = Constants.MaxMovesPerGame * 2 + 1;
+    // Random plies played after the tree before scoring on material, so that a turn holds enough playouts to visit every root move.
+    // Random games last hundreds of plies and a material lead rarely survives that long anyway.
+    private static final int PlayoutPlies = 24;
+    // Material lead, in pawns and counting reserves, scored as a win at the cutoff.
+    private static final int CutoffMargin = 2;
+
+    private final int threads;
+    private final long maxTreeBytes;
+    private final AtomicLong treeBytes = new AtomicLong();
+    private final AtomicLong playouts = new AtomicLong();
+    private Board root = null;
+    private Node rootNode = null;
+    private long elapsedNanos = 0;
+
+    // The tree stops growing past maxTreeBytes, playouts then start from its leaves.
+    public MonteCarloSearch(int threads, long maxTreeBytes) {
+        this.threads = threads;
+        this.maxTreeBytes = maxTreeBytes;
+    }
+
+    public int getThreads() { return threads; }
+    public long getPlayouts() { return playouts.get(); }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public long getPlayoutsPerSecond() { return elapsedNanos > 0 ? playouts.get() * 1000000000L / elapsedNanos : 0; }
+    // Estimated size of the tree of the last search.
+    public long getTreeBytes() { return treeBytes.get(); }
+    public long getTreeNodes() { return rootNode != null ? rootNode.count() : 0; }
+
+    // Score of the chosen move in the last search, between 0 for a loss and 1 for a win.
+    public double getScore() {
+        Node best = getBestChild();
+        return best != null && best.visits > 0 ? (double)best.halfPoints / (Win * best.visits) : 0.5;
+    }
+
+    // Searches for the given time on every thread, returns the most visited move, PackedMove.None without legal moves.
+    public int search(Board board, long nanos) {
+        long start = System.nanoTime();
+        root = board;
+        rootNode = new Node(PackedMove.None);
+        treeBytes.set(NodeBytes);
+        playouts.set(0);
+
+        long deadline = start + nanos;
+        Thread[] workers = new Thread[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> run(deadline));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        // The calling thread searches too.
+        run(deadline);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+
+        Node best = getBestChild();
+        return best != null ? best.move : PackedMove.None;
+    }
+
+    private Node getBestChild() {
+        Node[] children = rootNode != null ? rootNode.children : null;
+        if (children == null) return null;
+        Node best = null;
+        // Ties, common when a short turn leaves few visits per move, go to the best mean score.
+        for (Node child : children) {
+            if (best == null || child.visits > best.visits || (child.visits == best.visits && child.halfPoints > best.halfPoints)) best = child;
+        }
+        return best;
+    }
+
+    private void run(long deadline) {
+        Node[] path = new Node[MaxPlies];
+        Color[] movers = new Color[MaxPlies];
+        long[] hashes = new long[MaxPlies];
+        MoveList moves = new MoveList();
+        Random rng = ThreadLocalRandom.current();
+        // The clock is read once per playout, which lasts far less than a turn.
+        while (System.nanoTime() < deadline) {
+            Board board = new Board(root);
+            int depth = 0, length = 0;
+            Node node = rootNode;
+            path[depth++] = node;
+            hashes[length++] = board.getHash();
+            GameResult result = GameResult.Undecided;
+
+            // Selection, going down expanded nodes.
+            while (node.children != null && node.children.length > 0) {
+                node = select(node);
+                node.addVirtualLoss();
+                movers[depth] = board.getColorToPlay();
+                path[depth++] = node;
+                board.applyMoveUnsafe(node.move);
+                hashes[length++] = board.getHash();
+                result = getDrawResult(board, hashes, length);
+                if (result == GameResult.Undecided && !board.hasAnyLegalMove())
+                    result = getEndResult(board);
+                if (result != GameResult.Undecided) break;
+            }
+
+            // Expansion of the leaf reached, by a single thread.
+            if (result == GameResult.Undecided && node.children == null && treeBytes.get() < maxTreeBytes && node.startExpansion()) {
+                board.generateMoves(moves);
+                Node[] children = new Node[moves.size()];
+                for (int i = 0; i < children.length; i++)
+                    children[i] = new Node(moves.get(i));
+                treeBytes.addAndGet(ArrayBytes + 4L * children.length + (long)NodeBytes * children.length);
+                node.children = children;
+            }
+
+            // Playout with random moves until the game ends or the ply cap.
+            Color winner = null;
+            for (int plies = 0; result == GameResult.Undecided; plies++) {
+                if (plies == PlayoutPlies) {
+                    winner = getMaterialLeader(board);
+                    break;
+                }
+                board.generateMoves(moves);
+                if (moves.isEmpty()) {
+                    result = getEndResult(board);
+                    break;
+                }
+                board.applyMoveUnsafe(moves.get(rng.nextInt(moves.size())));
+                hashes[length++] = board.getHash();
+                result = getDrawResult(board, hashes, length);
+            }
+
+            // Backpropagation, each node scored for the side which moved into it.
+            if (result == GameResult.WhiteWins) winner = Color.White;
+            else if (result == GameResult.BlackWins) winner = Color.Black;
+            path[0].addPlayout(Draw, false);
+            for (int i = 1; i < depth; i++)
+                path[i].addPlayout(winner == null ? Draw : movers[i] == winner ? Win : Loss, true);
+            playouts.incrementAndGet();
+        }
+    }
+
+    // Child with the best upper confidence bound, unvisited children first.
+    private static Node select(Node node) {
+        Node[] children = node.children;
+        double logVisits = Math.log(Math.max(1, node.visits + node.virtualLosses));
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            int visits = child.visits + child.virtualLosses;
+            double value = visits == 0 ? Double.POSITIVE_INFINITY
+                : (double)child.halfPoints / (Win * visits) + Exploration * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                best = child;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    // Color ahead by at least CutoffMargin, null when neither is.
+    private static Color getMaterialLeader(Board board) {
+        int balance = getMaterial(board, Color.White) - getMaterial(board, Color.Black);
+        return balance >= CutoffMargin ? Color.White : balance <= -CutoffMargin ? Color.Black : null;
+    }
+
+    private static int getMaterial(Board board, Color color) {
+        int material = board.getMaterial(color);
+        if (board.isCrazyHouse()) {
+            for (PieceType pieceType : Constants.ReservePieces)
+                material += board.getReserve(color, pieceType) * Constants.PieceValues[pieceType.ordinal()];
+        }
+        return material;
+    }
+
+    // Checkmate or stalemate of a position without legal moves.
+    private static GameResult getEndResult(Board board) {
+        if (!board.isKingAttacked(board.getColorToPlay())) return GameResult.Stalemate;
+        return board.getColorToPlay() == Color.White ? GameResult.BlackWins : GameResult.WhiteWins;
+    }
+
+    // Draws checked by the referee after each move, repetitions being counted from the root of the search only.
+    private static GameResult getDrawResult(Board board, long[] hashes, int length) {
+        if (!board.hasSufficientMaterial()) return GameResult.InsufficientMaterial;
+        if (board.getHalfMoveClock() >= 100) return GameResult.FiftyMove;
+        if (board.getHalfMoves() >= Constants.MaxMovesPerGame * 2) return GameResult.ForcedDraw;
+        long hash = hashes[length - 1];
+        int repetitions = 1;
+        for (int i = length - 3; i >= Math.max(0, length - 1 - board.getHalfMoveClock()); i -= 2) {
+            if (hashes[i] == hash && ++repetitions == 3) return GameResult.Repetition;
+        }
+        return GameResult.Undecided;
+    }
+
+    private static final class Node {
+        private static final AtomicIntegerFieldUpdater<Node> Visits = AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+        private static final AtomicIntegerFieldUpdater<Node> VirtualLosses = AtomicIntegerFieldUpdater.newUpdater(Node.class, "virtualLosses");
+        private static final AtomicIntegerFieldUpdater<Node> Expanding = AtomicIntegerFieldUpdater.newUpdater(Node.class, "expanding");
+        private static final AtomicLongFieldUpdater<Node> HalfPoints = AtomicLongFieldUpdater.newUpdater(Node.class, "halfPoints");
+
+        // Move leading to the node from its parent.
+        final int move;
+        // Null until expanded, empty for a position without legal moves.
+        volatile Node[] children = null;
+        volatile int visits = 0;
+        volatile int virtualLosses = 0;
+        volatile int expanding = 0;
+        volatile long halfPoints = 0;
+
+        Node(int move) { this.move = move; }
+
+        void addVirtualLoss() { VirtualLosses.addAndGet(this, VirtualLoss); }
+
+        // Replaces the virtual loss of the thread with the actual result.
+        void addPlayout(int points, boolean virtualLoss) {
+            HalfPoints.addAndGet(this, points);
+            Visits.incrementAndGet(this);
+            if (virtualLoss) VirtualLosses.addAndGet(this, -VirtualLoss);
+        }
+
+        // Whether the calling thread won the right to expand the node.
+        boolean startExpansion() { return Expanding.compareAndSet(this, 0, 1); }
+
+        long count() {
+            long result = 1;
+            Node[] nodes = children;
+            if (nodes != null) {
+                for (Node child : nodes)
+                    result += child.count();
+            }
+            return result;
+        }
+    }
+}
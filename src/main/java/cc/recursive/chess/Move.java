@@ -24,13 +24,13 @@ public class Move {
     public Move(String str) throws ParseException {
         if (str.length() < 4) throw new ParseException("Move string needs to be at least 4 characters.", 0);
         if (str.charAt(1) == '@') {
-            to = new Square(str.substring(2, 4));
+            to = Square.fromString(str.substring(2, 4));
             pieceType = Optional.of(PieceType.fromChar(str.charAt(0)));
             if (pieceType.get() == PieceType.King) throw new ParseException("Drop piece is invalid.", 0);
             return;
         }
-        from = new Square(str.substring(0, 2));
-        to = new Square(str.substring(2, 4));
+        from = Square.fromString(str.substring(0, 2));
+        to = Square.fromString(str.substring(2, 4));
         if (str.length() == 5) {
             PieceType pieceType = PieceType.fromChar(str.charAt(4));
             if (pieceType == PieceType.Pawn || pieceType == PieceType.King) throw new ParseException("Promotion piece is invalid.", 0);
@@ -0,0 +1,52 @@
+package cc.recursive.chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Growable buffer of packed moves, meant to be reused between positions to avoid allocations.
+public class MoveList {
+    private int[] moves;
+    private int size = 0;
+
+    public MoveList() { this(256); }
+    public MoveList(int capacity) { moves = new int[capacity]; }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int get(int index) { return moves[index]; }
+    public void clear() { size = 0; }
+
+    // Exchanges two moves, for search code ordering the list in place.
+    public void swap(int i, int j) {
+        int move = moves[i];
+        moves[i] = moves[j];
+        moves[j] = move;
+    }
+
+    public void add(int move) {
+        if (size == moves.length)
+            moves = Arrays.copyOf(moves, size * 2);
+        moves[size++] = move;
+    }
+
+    public void addAll(MoveList other) {
+        for (int i = 0; i < other.size; i++)
+            add(other.moves[i]);
+    }
+
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) return true;
+        }
+        return false;
+    }
+
+    // Converts to move objects at the protocol boundary.
+    public List<Move> toMoves() {
+        List<Move> result = new ArrayList<Move>(size);
+        for (int i = 0; i < size; i++)
+            result.add(PackedMove.toMove(moves[i]));
+        return result;
+    }
+}
@@ -0,0 +1,11 @@
+package cc.recursive.chess;
+
+// Stages of move generation accepted by Board.generateMoves, which can be combined:
+// captures and promotions, then quiet moves and castlings, then drops.
+// Search code can generate a later stage only once an earlier one did not cut off.
+public class MoveStages {
+    public static final int Captures = 1;
+    public static final int Quiets = 2;
+    public static final int Drops = 4;
+    public static final int All = Captures | Quiets | Drops;
+}
@@ -0,0 +1,43 @@
+package cc.recursive.chess;
+
+// Moves packed in the low 16 bits of an int so that generating them does not allocate.
+// Bits 0-5 hold the destination square, 6-11 the origin square, 12-14 the promotion or drop piece type plus one and 15 the castling flag.
+// Drops use their destination as origin, which no other move can do.
+public class PackedMove {
+    // Never a valid move, used for moves that cannot be encoded.
+    public static final int None = 0;
+
+    private static final int SquareMask = 0x3F;
+    private static final int FromShift = 6;
+    private static final int PieceShift = 12;
+    private static final int PieceMask = 0x7;
+    private static final int CastlingFlag = 1 << 15;
+    // PieceType.values() copies the array on each call.
+    private static final PieceType[] PieceTypes = PieceType.values();
+
+    public static int create(int from, int to) { return (from << FromShift) | to; }
+    public static int createPromotion(int from, int to, PieceType pieceType) { return create(from, to) | ((pieceType.ordinal() + 1) << PieceShift); }
+    public static int createDrop(int to, PieceType pieceType) { return createPromotion(to, to, pieceType); }
+    // Castling is encoded as the king moving to its own rook's square.
+    public static int createCastling(int kingFrom, int rookFrom) { return create(kingFrom, rookFrom) | CastlingFlag; }
+
+    public static int getFrom(int move) { return (move >>> FromShift) & SquareMask; }
+    public static int getTo(int move) { return move & SquareMask; }
+    public static boolean hasPieceType(int move) { return ((move >>> PieceShift) & PieceMask) != 0; }
+    public static PieceType getPieceType(int move) { return PieceTypes[((move >>> PieceShift) & PieceMask) - 1]; }
+    public static boolean isDrop(int move) { return hasPieceType(move) && getFrom(move) == getTo(move); }
+    public static boolean isPromotion(int move) { return hasPieceType(move) && getFrom(move) != getTo(move); }
+    public static boolean isCastling(int move) { return (move & CastlingFlag) != 0; }
+
+    // Converts to a move object at the protocol boundary.
+    public static Move toMove(int move) {
+        Square to = Square.fromIndex(getTo(move));
+        if (isDrop(move))
+            return new Move(null, to, getPieceType(move));
+        Square from = Square.fromIndex(getFrom(move));
+        return isPromotion(move) ? new Move(from, to, getPieceType(move)) : new Move(from, to);
+    }
+
+    // Encode move to UCI representation, same as Move.toString.
+    public static String toString(int move) { return toMove(move).toString(); }
+}
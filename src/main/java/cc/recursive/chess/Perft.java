@@ -0,0 +1,154 @@
+package cc.recursive.chess;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Counts leaf nodes of the legal move tree to check move generation and measure its speed. https://www.chessprogramming.org/Perft
+public class Perft {
+    // Subtrees at or below this depth are counted by a single thread.
+    private static final int SequentialDepth = 3;
+
+    // Counts leaf nodes sequentially, moves on the last ply are counted without being made.
+    public static long perft(Board board, int depth) {
+        if (depth <= 0) return 1;
+        MoveList[] moveLists = new MoveList[depth + 1];
+        for (int i = 1; i <= depth; i++)
+            moveLists[i] = new MoveList();
+        return perft(board, depth, moveLists);
+    }
+
+    private static long perft(Board board, int depth, MoveList[] moveLists) {
+        MoveList moves = moveLists[depth];
+        board.generateMoves(moves);
+        if (depth == 1)
+            return moves.size();
+
+        long result = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            board.makeMove(moves.get(i));
+            result += perft(board, depth - 1, moveLists);
+            board.unmakeMove();
+        }
+        return result;
+    }
+
+    // Counts leaf nodes splitting subtrees across the pool.
+    public static long perft(Board board, int depth, ForkJoinPool pool) {
+        return pool.invoke(new PerftTask(new Board(board), PackedMove.None, depth));
+    }
+
+    // Counts leaf nodes under each legal move, sorted by move, to compare against another engine.
+    public static List<String> divide(Board board, int depth, ForkJoinPool pool) {
+        MoveList moves = new MoveList();
+        board.generateMoves(moves);
+        List<PerftTask> tasks = new ArrayList<PerftTask>();
+        for (int i = 0; i < moves.size(); i++)
+            tasks.add(new PerftTask(new Board(board), moves.get(i), depth - 1));
+        for (PerftTask task : tasks)
+            pool.execute(task);
+
+        List<String> lines = new ArrayList<String>();
+        for (PerftTask task : tasks)
+            lines.add(String.format("%s: %d", PackedMove.toString(task.move), task.join()));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @SuppressWarnings("serial")
+    private static class PerftTask extends RecursiveTask<Long> {
+        // Board owned by this task, move to make on it first unless PackedMove.None.
+        private final Board board;
+        private final int move;
+        private final int depth;
+
+        PerftTask(Board board, int move, int depth) {
+            this.board = board;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if (move != PackedMove.None)
+                board.makeMove(move);
+            if (depth <= SequentialDepth)
+                return perft(board, depth);
+
+            MoveList moves = new MoveList();
+            board.generateMoves(moves);
+            List<PerftTask> tasks = new ArrayList<PerftTask>(moves.size());
+            for (int i = 0; i < moves.size(); i++)
+                tasks.add(new PerftTask(new Board(board), moves.get(i), depth - 1));
+            long result = 0;
+            for (PerftTask task : invokeAll(tasks))
+                result += task.join();
+            return result;
+        }
+    }
+
+    private static void run(String name, Board board, int depth, boolean divide, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        long nodes = 0;
+        if (divide) {
+            for (String line : divide(board, depth, pool)) {
+                System.out.println(line);
+                nodes += Long.parseLong(line.substring(line.indexOf(' ') + 1));
+            }
+        } else
+            nodes = perft(board, depth, pool);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s depth %d: %d nodes in %.3fs, %.0f nodes/s (%s)", name, depth, nodes, seconds, nodes / seconds, board.toFenString(false)));
+    }
+
+    // Counts leaf nodes from each of the 960 start positions, listing every count by Scharnagl number for comparison with other engines.
+    private static void runAll960(int depth, boolean crazyHouse, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        long nodes = 0;
+        for (int index = 0; index < StartPosition.Count; index++) {
+            long count = perft(new Board(StartPosition.get(index), crazyHouse), depth, pool);
+            System.out.println(String.format("%d: %d (%s)", index, count, StartPosition.get(index).getFen()));
+            nodes += count;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("All 960 depth %d: %d nodes in %.3fs, %.0f nodes/s", depth, nodes, seconds, nodes / seconds));
+    }
+
+    // Usage: Perft [-divide] [-crazyhouse] [-960] [-threads N] [depth [fen]]
+    // Without a FEN, runs on the standard, a Chess960 and a crazyhouse position, or on every Chess960 start position with -960.
+    public static void main(String[] args) throws ParseException {
+        boolean divide = false, crazyHouse = false, all960 = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = 5;
+        String fen = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-divide"))
+                divide = true;
+            else if (args[i].equals("-crazyhouse"))
+                crazyHouse = true;
+            else if (args[i].equals("-960"))
+                all960 = true;
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (fen == null && depth == 5 && args[i].matches("\\d+"))
+                depth = Integer.parseInt(args[i]);
+            else
+                fen = fen == null ? args[i] : fen + " " + args[i];
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        if (fen != null)
+            run("Custom", new Board(fen, crazyHouse), depth, divide, pool);
+        else if (all960)
+            runAll960(depth, crazyHouse, pool);
+        else {
+            run("Standard", new Board(0, false), depth, divide, pool);
+            run("Chess960", new Board(960, false), depth, divide, pool);
+            run("Crazyhouse", new Board("r2qk2r/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2QK2R/NBPnbp w AHah - 0 7", true), depth - 1, divide, pool);
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,114 @@
+package cc.recursive.chess;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Game as read from a PGN file: tag pairs, moves in algebraic notation and the comment following each move.
+// Moves are only resolved against the rules by toRecord, so that reading and checking can happen on different threads.
+public class PgnGame {
+    // Number of the game in its file, starting at 1.
+    private final long number;
+    // Tag pairs in order of appearance.
+    private final Map<String, String> tags = new LinkedHashMap<String, String>();
+    private final List<String> moves = new ArrayList<String>();
+    // Comment following each move, null when none.
+    private final List<String> comments = new ArrayList<String>();
+    private String result = "*";
+
+    public PgnGame(long number) { this.number = number; }
+
+    public long getNumber() { return number; }
+    public Map<String, String> getTags() { return tags; }
+    public String getTag(String name) { return tags.get(name); }
+    public void setTag(String name, String value) { tags.put(name, value); }
+    public int getPlyCount() { return moves.size(); }
+    public String getMove(int ply) { return moves.get(ply); }
+    public String getComment(int ply) { return comments.get(ply); }
+    // Result token ending the move text: 1-0, 0-1, 1/2-1/2 or *.
+    public String getResult() { return result; }
+    public void setResult(String result) { this.result = result; }
+
+    public void addMove(String san) {
+        moves.add(san);
+        comments.add(null);
+    }
+
+    // Comments found before the first move are dropped.
+    public void addComment(String comment) {
+        int ply = comments.size() - 1;
+        if (ply < 0) return;
+        String previous = comments.get(ply);
+        comments.set(ply, previous == null ? comment : previous + " " + comment);
+    }
+
+    public boolean isCrazyHouse() {
+        String variant = tags.get("Variant");
+        return variant != null && variant.equalsIgnoreCase("crazyhouse");
+    }
+
+    // Start position from the FEN tag, null for the classic start position.
+    // Crazyhouse reserves written in brackets after the board are converted to the extra row used by Board.
+    public String getStartFen() {
+        String fen = tags.get("FEN");
+        if (fen == null || "0".equals(tags.get("SetUp"))) return null;
+        int open = fen.indexOf('[');
+        if (open < 0) return fen;
+        int close = fen.indexOf(']', open);
+        return close < 0 ? fen : fen.substring(0, open) + "/" + fen.substring(open + 1, close) + fen.substring(close + 1);
+    }
+
+    // Resolves every move against the rules, throwing with the ply number when one is not legal.
+    public GameRecord toRecord() throws ParseException {
+        boolean crazyHouse = isCrazyHouse();
+        String startFen = getStartFen();
+        // Played through a Game, which keeps the position history telling repetitions apart.
+        Game game = startFen != null ? new Game(startFen, crazyHouse) : new Game(0, crazyHouse);
+        Board board = game.getBoard();
+        int[] packedMoves = new int[moves.size()];
+        for (int ply = 0; ply < packedMoves.length; ply++) {
+            String san = moves.get(ply);
+            try {
+                packedMoves[ply] = board.parseAlgebraicMove(san, 0, san.length());
+            } catch (ParseException e) {
+                throw new ParseException(String.format("Game %d, ply %d: %s", number, ply + 1, e.getMessage()), ply);
+            }
+            game.applyMoveTrusted(packedMoves[ply]);
+        }
+
+        GameRecord record = new GameRecord(0, startFen, crazyHouse, packedMoves, toGameResult(game.getGameResult()));
+        for (int ply = 0; ply < packedMoves.length; ply++) {
+            if (comments.get(ply) != null)
+                record.setComment(ply, comments.get(ply));
+        }
+        return record;
+    }
+
+    // PGN only tells who won, the rules applied to the final position tell how, anything else being decided outside the board.
+    private GameResult toGameResult(GameResult rules) {
+        switch (result) {
+            case "1-0": return rules == GameResult.WhiteWins ? GameResult.WhiteWins : GameResult.BlackResigns;
+            case "0-1": return rules == GameResult.BlackWins ? GameResult.BlackWins : GameResult.WhiteResigns;
+            case "1/2-1/2":
+                switch (rules) {
+                    case Stalemate: case Repetition: case InsufficientMaterial: case FiftyMove: case ForcedDraw:
+                        return rules;
+                    default:
+                        return GameResult.DrawByAgreement;
+                }
+        }
+        return GameResult.Undecided;
+    }
+
+    // Result token of a game result.
+    public static String toResultToken(GameResult result) {
+        switch (result) {
+            case Undecided: return "*";
+            case WhiteWins: case BlackResigns: case WhiteWinsByTablebase: return "1-0";
+            case BlackWins: case WhiteResigns: case BlackWinsByTablebase: return "0-1";
+            default: return "1/2-1/2";
+        }
+    }
+}
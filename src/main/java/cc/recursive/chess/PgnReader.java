@@ -0,0 +1,282 @@
+package cc.recursive.chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Reads games from PGN text one at a time, so that files of any size are read in constant memory.
+// Variations, numeric annotations and escaped lines are skipped, comments are kept with the move they follow.
+public class PgnReader implements Closeable {
+    // Receives games read by readAll, from several threads at once and in no particular order.
+    public interface Handler {
+        // Record is null when the moves could not be resolved, error then tells why.
+        void handle(PgnGame game, GameRecord record, ParseException error);
+    }
+
+    // Error messages kept by main, the others are only counted.
+    private static final int MaxReportedErrors = 100;
+    // Games waiting for a worker thread in readAll, per thread.
+    private static final int QueuedGamesPerThread = 16;
+    private static final PgnGame EndOfGames = new PgnGame(0);
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int position = 0, limit = 0;
+    // Number of lines read, for error messages.
+    private long line = 1;
+    private long gameCount = 0;
+    private final StringBuilder token = new StringBuilder();
+
+    public PgnReader(Reader in) { this.in = in; }
+
+    // Returns the next game, null at the end of the input.
+    public PgnGame next() throws IOException, ParseException {
+        PgnGame game = null;
+        while (true) {
+            long previousLine = line;
+            int c = skipWhitespace();
+            boolean lineStart = line != previousLine || (gameCount == 0 && game == null);
+            if (c < 0)
+                return game;
+            if (c == '[') {
+                // A tag after move text starts the next game, when the previous one had no result token.
+                if (game != null && game.getPlyCount() > 0)
+                    return game;
+                if (game == null)
+                    game = new PgnGame(++gameCount);
+                position++;
+                readTag(game);
+                continue;
+            }
+            if (game == null)
+                game = new PgnGame(++gameCount);
+            position++;
+            if (c == '{')
+                game.addComment(readUntil('}').trim());
+            else if (c == ';' || (c == '%' && lineStart))
+                skipLine();
+            else if (c == '(')
+                skipVariation();
+            else if (c == '$')
+                readSymbol();
+            else if (c == ')' || c == ']' || c == '}')
+                throw new ParseException(String.format("Unexpected '%c' on line %d.", (char)c, line), 0);
+            else {
+                position--;
+                String symbol = readSymbol();
+                if (symbol.equals("1-0") || symbol.equals("0-1") || symbol.equals("1/2-1/2") || symbol.equals("*")) {
+                    game.setResult(symbol);
+                    return game;
+                }
+                // Move numbers may be glued to the move that follows them.
+                int start = 0;
+                if (!symbol.startsWith("0-0")) {
+                    while (start < symbol.length() && Character.isDigit(symbol.charAt(start)))
+                        start++;
+                    while (start < symbol.length() && symbol.charAt(start) == '.')
+                        start++;
+                }
+                if (start < symbol.length())
+                    game.addMove(start == 0 ? symbol : symbol.substring(start));
+            }
+        }
+    }
+
+    // Reads all remaining games, resolving their moves on worker threads before handing them over.
+    // Only this thread reads text and at most a few games per worker are waiting, so memory stays constant.
+    public void readAll(int threads, Handler handler) throws IOException, ParseException, InterruptedException {
+        BlockingQueue<PgnGame> queue = new ArrayBlockingQueue<PgnGame>(threads * QueuedGamesPerThread);
+        AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    for (PgnGame game = queue.take(); game != EndOfGames; game = queue.take()) {
+                        // Keep taking games after a failure so that the reading thread is never blocked.
+                        if (failure.get() != null) continue;
+                        GameRecord record = null;
+                        ParseException error = null;
+                        try {
+                            record = game.toRecord();
+                        } catch (ParseException e) {
+                            error = e;
+                        }
+                        try {
+                            handler.handle(game, record, error);
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            for (PgnGame game = next(); game != null && failure.get() == null; game = next())
+                queue.put(game);
+        } finally {
+            for (int i = 0; i < threads; i++)
+                queue.put(EndOfGames);
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {}
+        }
+        if (failure.get() != null)
+            throw failure.get();
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c < 0 || !Character.isWhitespace(c)) return c;
+            if (c == '\n') line++;
+            position++;
+        }
+    }
+
+    // Reads up to the end character, which is consumed but not returned.
+    private String readUntil(char end) throws IOException {
+        token.setLength(0);
+        for (int c = peek(); c >= 0; c = peek()) {
+            position++;
+            if (c == '\n') line++;
+            if (c == end) break;
+            token.append((char)c);
+        }
+        return token.toString();
+    }
+
+    // Skips to the end of the line, leaving the line break to be read as whitespace.
+    private void skipLine() throws IOException {
+        for (int c = peek(); c >= 0 && c != '\n'; c = peek())
+            position++;
+    }
+
+    private String readSymbol() throws IOException {
+        token.setLength(0);
+        for (int c = peek(); c >= 0 && !Character.isWhitespace(c) && "{}()[];$".indexOf(c) < 0; c = peek()) {
+            token.append((char)c);
+            position++;
+        }
+        return token.toString();
+    }
+
+    // Skips a variation whose opening parenthesis was read, including nested ones and the comments inside.
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        for (int c = peek(); c >= 0; c = peek()) {
+            position++;
+            if (c == '\n') line++;
+            else if (c == '{') readUntil('}');
+            else if (c == '(') depth++;
+            else if (c == ')' && --depth == 0) return;
+        }
+    }
+
+    // Reads a tag pair whose opening bracket was read.
+    private void readTag(PgnGame game) throws IOException, ParseException {
+        skipWhitespace();
+        String name = readSymbol();
+        if (skipWhitespace() != '"') throw new ParseException(String.format("Tag '%s' has no value on line %d.", name, line), 0);
+        position++;
+        token.setLength(0);
+        for (int c = peek(); ; c = peek()) {
+            if (c < 0 || c == '\n') throw new ParseException(String.format("Tag '%s' is not terminated on line %d.", name, line), 0);
+            position++;
+            if (c == '"') break;
+            if (c == '\\') {
+                c = peek();
+                if (c < 0) continue;
+                position++;
+            }
+            token.append((char)c);
+        }
+        game.setTag(name, token.toString());
+        readUntil(']');
+    }
+
+    @Override
+    public void close() throws IOException { in.close(); }
+
+    // Usage: PgnReader [-threads N] [-archive file] file.pgn
+    // Checks every game of a PGN file and reports the ones that cannot be replayed, optionally archiving the others.
+    public static void main(String[] args) throws IOException, ParseException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String archiveFile = null;
+        int i = 0;
+        for (; i < args.length - 1; i++) {
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-archive"))
+                archiveFile = args[++i];
+            else
+                break;
+        }
+        if (i != args.length - 1) {
+            System.err.println("Usage: PgnReader [-threads N] [-archive file] file.pgn");
+            System.exit(1);
+        }
+
+        GameArchiveWriter archive = archiveFile != null ? new GameArchiveWriter(Paths.get(archiveFile)) : null;
+        AtomicLong games = new AtomicLong(), plies = new AtomicLong(), errorCount = new AtomicLong();
+        List<String> errors = new ArrayList<String>();
+        long start = System.nanoTime();
+        try (PgnReader reader = new PgnReader(new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(args[i])), StandardCharsets.UTF_8)))) {
+            reader.readAll(threads, (game, record, error) -> {
+                games.incrementAndGet();
+                if (record == null) {
+                    if (errorCount.incrementAndGet() <= MaxReportedErrors) {
+                        synchronized (errors) {
+                            errors.add(error.getMessage());
+                        }
+                    }
+                    return;
+                }
+                plies.addAndGet(record.getPlyCount());
+                if (archive != null) {
+                    try {
+                        archive.append(record);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        } finally {
+            if (archive != null)
+                archive.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("Games: %d, plies: %d, errors: %d", games.get(), plies.get(), errorCount.get()));
+        System.out.println(String.format("Time: %.1fs, %.0f games/s", seconds, games.get() / seconds));
+        for (String error : errors)
+            System.out.println(error);
+    }
+}
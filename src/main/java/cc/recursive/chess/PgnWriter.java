@@ -0,0 +1,144 @@
+package cc.recursive.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.Map;
+
+// Writes games in PGN export format, one after the other. https://www.chessclub.com/help/PGN-spec
+// Games not starting from the classic position get SetUp and FEN tags, crazyhouse games a Variant tag.
+// The FEN is written the way other PGN tools read it: crazyhouse reserves in brackets and X-FEN castling rights.
+public class PgnWriter implements Closeable {
+    private static final String[] SevenTagRoster = { "Event", "Site", "Date", "Round", "White", "Black", "Result" };
+    private static final String[] SevenTagDefaults = { "?", "?", "????.??.??", "?", "?", "?", "*" };
+    private static final int MaxLineLength = 79;
+
+    private final Writer out;
+    // Length of the move text line being written.
+    private int lineLength = 0;
+
+    public PgnWriter(Writer out) { this.out = out; }
+
+    public void write(Game game, Map<String, String> tags) throws IOException { write(GameRecord.fromGame(game), tags); }
+
+    // Tags other than the seven tag roster are written after it, in the order of the map, which may be null.
+    public void write(GameRecord record, Map<String, String> tags) throws IOException {
+        Board board;
+        try {
+            board = record.getStartFen() != null ? new Board(record.getStartFen(), record.isCrazyHouse()) : new Board(record.getSeed(), record.isCrazyHouse());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        String result = PgnGame.toResultToken(record.getResult());
+
+        for (int i = 0; i < SevenTagRoster.length; i++) {
+            String value = i == SevenTagRoster.length - 1 ? result : tags != null ? tags.get(SevenTagRoster[i]) : null;
+            writeTag(SevenTagRoster[i], value != null ? value : SevenTagDefaults[i]);
+        }
+        if (record.isCrazyHouse())
+            writeTag("Variant", "Crazyhouse");
+        else if (record.getStartFen() == null && record.getSeed() != 0)
+            writeTag("Variant", "Chess960");
+        if (record.getStartFen() != null || record.getSeed() != 0) {
+            writeTag("SetUp", "1");
+            writeTag("FEN", toPgnFen(board));
+        }
+        if (tags != null) {
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                if (!isWrittenTag(tag.getKey()))
+                    writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        out.write('\n');
+
+        lineLength = 0;
+        for (int ply = 0; ply < record.getPlyCount(); ply++) {
+            int move = record.getMove(ply);
+            if (board.getColorToPlay() == Color.White)
+                writeToken((1 + board.getHalfMoves() / 2) + ".");
+            else if (ply == 0)
+                writeToken((1 + board.getHalfMoves() / 2) + "...");
+            writeToken(board.getAlgebraicMoveUnsafe(move));
+            board.applyMoveUnsafe(move);
+            String comment = record.getComment(ply);
+            if (comment != null)
+                writeToken("{" + comment.replace('}', ')') + "}");
+        }
+        writeToken(result);
+        out.write("\n\n");
+    }
+
+    // Board's FEN with the crazyhouse reserve row in brackets after the board, and X-FEN castling rights:
+    // K or Q when the rook is the outermost one on that side of the king, its column otherwise, king side first for each color.
+    private static String toPgnFen(Board board) {
+        String fen = board.toFenString(false);
+        int boardEnd = fen.indexOf(' ');
+        StringBuilder result = new StringBuilder(fen.length() + 1);
+        if (board.isCrazyHouse()) {
+            int reserveStart = fen.lastIndexOf('/', boardEnd) + 1;
+            result.append(fen, 0, reserveStart - 1).append('[').append(fen, reserveStart, boardEnd).append(']');
+        } else
+            result.append(fen, 0, boardEnd);
+        int castlingStart = fen.indexOf(' ', boardEnd + 1) + 1, castlingEnd = fen.indexOf(' ', castlingStart);
+        result.append(fen, boardEnd, castlingStart);
+        if (fen.charAt(castlingStart) == '-')
+            result.append('-');
+        for (Color color : Color.values()) {
+            for (int side = 0; side < 2; side++) {
+                for (int i = castlingStart; i < castlingEnd; i++) {
+                    char c = fen.charAt(i);
+                    if (c != '-' && Character.isUpperCase(c) == (color == Color.White) && isKingSide(board, color, c) == (side == 0))
+                        result.append(toXFenCastling(board, color, c));
+                }
+            }
+        }
+        return result.append(fen, castlingEnd, fen.length()).toString();
+    }
+
+    private static boolean isKingSide(Board board, Color color, char castling) {
+        return Character.toLowerCase(castling) - 'a' > board.getKingSquare(color) % Constants.Columns;
+    }
+
+    private static char toXFenCastling(Board board, Color color, char castling) {
+        int row = board.getInitialRow(color), column = Character.toLowerCase(castling) - 'a';
+        boolean kingSide = isKingSide(board, color, castling);
+        Piece rook = Piece.of(PieceType.Rook, color);
+        for (int other = kingSide ? column + 1 : column - 1; other >= 0 && other < Constants.Columns; other += kingSide ? 1 : -1) {
+            if (board.get(Square.of(other, row)) == rook) return castling;
+        }
+        char side = kingSide ? 'k' : 'q';
+        return color == Color.White ? Character.toUpperCase(side) : side;
+    }
+
+    private static boolean isWrittenTag(String name) {
+        for (String tag : SevenTagRoster) {
+            if (tag.equals(name)) return true;
+        }
+        return name.equals("Variant") || name.equals("SetUp") || name.equals("FEN");
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        out.write('[');
+        out.write(name);
+        out.write(" \"");
+        out.write(value.replace("\\", "\\\\").replace("\"", "\\\""));
+        out.write("\"]\n");
+    }
+
+    // Tokens are separated by spaces, wrapping lines before they get too long.
+    private void writeToken(String token) throws IOException {
+        if (lineLength > 0 && lineLength + 1 + token.length() > MaxLineLength) {
+            out.write('\n');
+            lineLength = 0;
+        } else if (lineLength > 0) {
+            out.write(' ');
+            lineLength++;
+        }
+        out.write(token);
+        lineLength += token.length();
+    }
+
+    @Override
+    public void close() throws IOException { out.close(); }
+}
@@ -0,0 +1,129 @@
+package cc.recursive.chess;
+
+import java.io.FileWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+// Wall time spent in each phase of the referee turns, kept as histograms for the whole match.
+// Enabled with -Dchess.timing=json or -Dchess.timing=csv, the summary goes to the file named by -Dchess.timing.file or to stderr.
+// When disabled, every method returns at once and the JIT removes the calls.
+public class PhaseTimings {
+    public static final String Format = System.getProperty("chess.timing", "");
+    public static final boolean Enabled = Format.equals("json") || Format.equals("csv");
+
+    public enum Phase { Input, Execute, Output, ApplyMove, Algebraic, Result, View }
+
+    private static final Phase[] Phases = Phase.values();
+    // Histogram buckets hold durations between consecutive powers of two nanoseconds.
+    private static final int Buckets = 64;
+
+    private final long[][] histograms = new long[Phases.length][Buckets];
+    private final long[] counts = new long[Phases.length];
+    private final long[] totals = new long[Phases.length];
+    private final long[] maximums = new long[Phases.length];
+    // Time of the current turn per phase, a phase can be entered several times in a turn.
+    private final long[] turn = new long[Phases.length];
+    private final boolean[] turnPhases = new boolean[Phases.length];
+    private long lapStart = 0;
+
+    // Starts timing a turn.
+    public void start() {
+        if (!Enabled) return;
+        lapStart = System.nanoTime();
+    }
+
+    // Adds the time since the start or the previous lap to a phase.
+    public void lap(Phase phase) {
+        if (!Enabled) return;
+        long now = System.nanoTime();
+        turn[phase.ordinal()] += now - lapStart;
+        turnPhases[phase.ordinal()] = true;
+        lapStart = now;
+    }
+
+    // Records the time of each phase entered during the turn as one sample.
+    public void endTurn() {
+        if (!Enabled) return;
+        for (int i = 0; i < Phases.length; i++) {
+            if (!turnPhases[i]) continue;
+            long nanos = turn[i];
+            histograms[i][Buckets - 1 - Long.numberOfLeadingZeros(Math.max(nanos, 1))]++;
+            counts[i]++;
+            totals[i] += nanos;
+            maximums[i] = Math.max(maximums[i], nanos);
+            turn[i] = 0;
+            turnPhases[i] = false;
+        }
+    }
+
+    public long getCount(Phase phase) { return counts[phase.ordinal()]; }
+    public long getTotalNanos(Phase phase) { return totals[phase.ordinal()]; }
+    public long getMaxNanos(Phase phase) { return maximums[phase.ordinal()]; }
+
+    // Upper bound of the bucket holding the given fraction of the samples.
+    public long getPercentileNanos(Phase phase, double fraction) {
+        long[] histogram = histograms[phase.ordinal()];
+        long rank = (long)Math.ceil(counts[phase.ordinal()] * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < Buckets; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank && seen > 0)
+                return Math.min(maximums[phase.ordinal()], getBucketBound(bucket));
+        }
+        return 0;
+    }
+
+    private static long getBucketBound(int bucket) { return bucket >= Buckets - 2 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1; }
+
+    // Writes the summary in the configured format and destination.
+    public void report() {
+        if (!Enabled) return;
+        String file = System.getProperty("chess.timing.file");
+        try (Writer out = file != null ? new FileWriter(file) : new NonClosingWriter(new PrintWriter(System.err))) {
+            if (Format.equals("csv"))
+                writeCsv(out);
+            else
+                writeJson(out);
+        } catch (IOException e) {
+            System.err.println("Unable to write phase timings: " + e.getMessage());
+        }
+    }
+
+    public void writeCsv(Writer out) throws IOException {
+        out.write("phase,count,total_ns,mean_ns,max_ns,p50_ns,p90_ns,p99_ns\n");
+        for (Phase phase : Phases) {
+            long count = getCount(phase);
+            out.write(String.format("%s,%d,%d,%d,%d,%d,%d,%d\n", phase, count, getTotalNanos(phase), count > 0 ? getTotalNanos(phase) / count : 0,
+                getMaxNanos(phase), getPercentileNanos(phase, 0.5), getPercentileNanos(phase, 0.9), getPercentileNanos(phase, 0.99)));
+        }
+    }
+
+    // Histograms are written as bucket upper bounds in nanoseconds with their sample counts.
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\"phases\":[");
+        for (Phase phase : Phases) {
+            long count = getCount(phase);
+            if (phase.ordinal() > 0) out.write(',');
+            out.write(String.format("{\"phase\":\"%s\",\"count\":%d,\"totalNanos\":%d,\"meanNanos\":%d,\"maxNanos\":%d,\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,\"histogram\":{",
+                phase, count, getTotalNanos(phase), count > 0 ? getTotalNanos(phase) / count : 0,
+                getMaxNanos(phase), getPercentileNanos(phase, 0.5), getPercentileNanos(phase, 0.9), getPercentileNanos(phase, 0.99)));
+            boolean first = true;
+            for (int bucket = 0; bucket < Buckets; bucket++) {
+                long samples = histograms[phase.ordinal()][bucket];
+                if (samples == 0) continue;
+                out.write(String.format("%s\"%d\":%d", first ? "" : ",", getBucketBound(bucket), samples));
+                first = false;
+            }
+            out.write("}}");
+        }
+        out.write("]}\n");
+    }
+
+    // Flushes instead of closing, so that stderr stays open.
+    private static class NonClosingWriter extends FilterWriter {
+        NonClosingWriter(Writer out) { super(out); }
+        @Override public void close() throws IOException { flush(); }
+    }
+}
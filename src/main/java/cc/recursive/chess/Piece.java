@@ -3,9 +3,21 @@ package cc.recursive.chess;
 import java.text.ParseException;
 
 public class Piece {
-    private PieceType pieceType;
-    private Color color;
-    private boolean promoted;
+    // Canonical instances for each piece type, color and promoted flag, to avoid allocating pieces when moving.
+    private static final Piece[][][] Pieces = new Piece[Constants.PieceTypes][Constants.Colors][2];
+
+    static {
+        for (PieceType pieceType : PieceType.values()) {
+            for (Color color : Color.values()) {
+                Pieces[pieceType.ordinal()][color.ordinal()][0] = new Piece(pieceType, color, false);
+                Pieces[pieceType.ordinal()][color.ordinal()][1] = new Piece(pieceType, color, true);
+            }
+        }
+    }
+
+    private final PieceType pieceType;
+    private final Color color;
+    private final boolean promoted;
 
     public Piece(PieceType pieceType, Color color) { this(pieceType, color, false); }
     public Piece(PieceType pieceType, Color color, boolean promoted) { this.pieceType = pieceType; this.color = color; this.promoted = promoted; }
@@ -14,15 +26,18 @@ public class Piece {
     public Color getColor() { return color; }
     public boolean isPromoted() { return promoted; }
 
-    public Piece invert() { return new Piece(pieceType, color.opposite()); }
-    public Piece promote() { return new Piece(pieceType, color, true); }
+    public Piece invert() { return of(pieceType, color.opposite()); }
+    public Piece promote() { return of(pieceType, color, true); }
 
     public char toChar() { return pieceType.toChar(color); }
     public String toString() { return Character.toString(toChar()); }
 
+    public static Piece of(PieceType pieceType, Color color) { return of(pieceType, color, false); }
+    public static Piece of(PieceType pieceType, Color color, boolean promoted) { return Pieces[pieceType.ordinal()][color.ordinal()][promoted ? 1 : 0]; }
+
     public static Piece fromChar(char c) throws ParseException {
         PieceType pieceType = PieceType.fromChar(c);
         Color color = Character.isUpperCase(c) ? Color.White : Color.Black;
-        return new Piece(pieceType, color);
+        return of(pieceType, color);
     }
 }
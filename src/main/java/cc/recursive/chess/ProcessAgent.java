@@ -0,0 +1,53 @@
+package cc.recursive.chess;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+// Agent program speaking the referee text protocol, adapted to the Agent interface.
+public class ProcessAgent implements Agent {
+    private final AgentProcess process;
+    // Milliseconds allowed for the configuration turn and the first game turn, which include the program start up, and for the other turns.
+    private final long configurationTimeout;
+    private final long turnTimeout;
+
+    public ProcessAgent(AgentProcess process, long configurationTimeout, long turnTimeout) {
+        this.process = process;
+        this.configurationTimeout = configurationTimeout;
+        this.turnTimeout = turnTimeout;
+    }
+
+    @Override
+    public Move play(Board board, List<Move> legalMoves, GameContext context) throws GameException {
+        try {
+            // Processes are configured once, even when they play several matches.
+            if (!process.isConfigured()) {
+                process.sendLines(Protocol.getConfigurationLines(board.isCrazyHouse()));
+                process.setInputVariables(Protocol.parseInputVariables(process.readLine(configurationTimeout)));
+            }
+            process.sendLines(Protocol.getInputLines(process.getInputVariables(), board, context.getLastMove(), context.isDrawOffered(), context.getGameNumber(), context.getScore(), context.getOpponentScore()));
+            Protocol.Output output = Protocol.parseOutput(process.readLine(process.getReadCount() <= 1 ? configurationTimeout : turnTimeout));
+
+            if (context.isDrawOffered() && output.isDrawAcceptance()) {
+                context.acceptDraw();
+                return null;
+            }
+            if (output.isResignation()) {
+                context.resign();
+                return null;
+            }
+            if (output.isDrawOffer())
+                context.offerDraw();
+            context.setComment(output.getComment());
+            return output.getMove(board, context.getRandom());
+        } catch (IOException | ParseException e) {
+            throw new GameException(e.getMessage());
+        } catch (TimeoutException e) {
+            throw new GameException("Timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GameException("Interrupted");
+        }
+    }
+}
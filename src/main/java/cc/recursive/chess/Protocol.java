@@ -0,0 +1,135 @@
+package cc.recursive.chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Text protocol spoken with players, shared by the CodinGame referee and the headless match runner.
+public class Protocol {
+    // Lines sent on the configuration turn, players answer with the input variables they want each turn.
+    public static List<String> getConfigurationLines(boolean crazyHouse) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("2");
+        lines.add(String.format("crazyHouse %d", crazyHouse ? 1 : 0));
+        lines.add(String.format("maxMoves %d", Constants.MaxMovesPerGame));
+        return lines;
+    }
+
+    public static String[] parseInputVariables(String configuration) { return configuration.split(" "); }
+
+    // Lines sent each turn for the input variables requested by the player, in order.
+    public static List<String> getInputLines(String[] inputVariables, Board board, Move lastMove, boolean drawOffered, int gameNumber, int score, int opponentScore) {
+        List<String> lines = new ArrayList<String>();
+        for (String variable : inputVariables) {
+            if (variable.equals("fen"))
+                lines.add(board.toFenString(false));
+            else if (variable.equals("moves")) {
+                MoveList moves = board.getLegalMoves();
+                lines.add(Integer.toString(moves.size()));
+                for (int i = 0; i < moves.size(); i++)
+                    lines.add(PackedMove.toString(moves.get(i)));
+            } else if (variable.equals("lastmove"))
+                lines.add(lastMove != null ? lastMove.toString() : "none");
+            else if (variable.equals("draw"))
+                lines.add(drawOffered ? "1" : "0");
+            else if (variable.equals("game"))
+                lines.add(Integer.toString(gameNumber));
+            else if (variable.equals("score"))
+                lines.add(String.format("%d %d", score, opponentScore));
+        }
+        return lines;
+    }
+
+    // Player output line split between action and comment.
+    public static class Output {
+        private final String action;
+        private final String comment;
+
+        Output(String action, String comment) {
+            this.action = action;
+            this.comment = comment;
+        }
+
+        public String getComment() { return comment; }
+
+        // Accepts a draw, only valid when one was offered by the opponent.
+        public boolean isDrawAcceptance() { return action.equals("draw"); }
+        public boolean isResignation() { return action.equals("resign"); }
+        // A move followed by '=' offers a draw.
+        public boolean isDrawOffer() { return action.length() > 0 && action.charAt(action.length() - 1) == '='; }
+
+        // Move played, 'random' picks one of the legal moves.
+        public Move getMove(Board board, Random rng) throws ParseException {
+            if (action.length() == 0)
+                throw new ParseException("Player output is missing!", 0);
+            String move = isDrawOffer() ? action.substring(0, action.length() - 1) : action;
+            if (move.equals("random")) {
+                MoveList moves = board.getLegalMoves();
+                return PackedMove.toMove(moves.get(rng.nextInt(moves.size())));
+            }
+            return new Move(move);
+        }
+    }
+
+    public static Output parseOutput(String line) {
+        // Split comment from output.
+        int spaceIndex = line.indexOf(' ');
+        if (spaceIndex == -1)
+            return new Output(line, null);
+        String comment = line.substring(spaceIndex + 1);
+        if (comment.length() > Constants.MaxCommentLength)
+            comment = comment.substring(0, Constants.MaxCommentLength);
+        return new Output(line.substring(0, spaceIndex), comment);
+    }
+
+    // Program side of the protocol, for agents running as their own process.
+    public interface Player {
+        // Called on the configuration turn with the start position, which has the first turn limit to warm up the JIT before moves are timed.
+        void warmUp(Board board);
+        // Returns the move to play in the position, the game number being 0 unless requested.
+        int think(Board board, int gameNumber);
+        // Short form of the search statistics fitting in a move comment, and long form printed on the error output.
+        String getComment();
+        String getReport();
+    }
+
+    // Plays through the protocol on the standard input and output until the input ends, requesting the given input variables which must include fen.
+    public static void play(Player player, String... inputVariables) throws IOException, ParseException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        int constantsCount = Integer.parseInt(in.readLine().trim());
+        boolean crazyHouse = false;
+        for (int i = 0; i < constantsCount; i++) {
+            String[] constant = in.readLine().trim().split(" ");
+            if (constant[0].equals("crazyHouse"))
+                crazyHouse = constant[1].equals("1");
+        }
+
+        player.warmUp(new Board(0, crazyHouse));
+        System.out.println(String.join(" ", inputVariables));
+
+        while (true) {
+            Board board = null;
+            int gameNumber = 0;
+            for (String variable : inputVariables) {
+                String line = in.readLine();
+                if (line == null) return;
+                if (variable.equals("fen"))
+                    board = new Board(line, crazyHouse);
+                else if (variable.equals("game"))
+                    gameNumber = Integer.parseInt(line.trim());
+                else if (variable.equals("moves")) {
+                    for (int i = Integer.parseInt(line.trim()); i > 0; i--)
+                        in.readLine();
+                }
+            }
+            int move = player.think(board, gameNumber);
+            System.out.println(PackedMove.toString(move) + " " + player.getComment());
+            System.err.println(player.getReport());
+        }
+    }
+}
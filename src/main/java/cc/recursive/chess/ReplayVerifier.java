@@ -0,0 +1,217 @@
+package cc.recursive.chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Replays every game of an archive to check that Board still agrees with it, spreading games over a fork-join pool.
+// Each replay must reach the recorded result, results the game cannot tell by itself such as resignations being taken as recorded.
+// A digest of the SAN and FEN of every ply can be saved before changing Board and compared after.
+public class ReplayVerifier {
+    // Error messages kept, the others are only counted.
+    private static final int MaxReportedErrors = 100;
+    // Games replayed by a task without splitting it further.
+    private static final int GamesPerTask = 64;
+    private static final long DigestSeed = 0xcbf29ce484222325L;
+    private static final long DigestPrime = 0x100000001b3L;
+
+    private final GameArchiveReader archive;
+    // Whether moves are applied without checking their legality nor whether the game ended before its last move.
+    private final boolean trusted;
+    // Digests computed by verify, null when not needed, and digests to compare them with, null when none.
+    private final long[] digests;
+    private final long[] expectedDigests;
+
+    public ReplayVerifier(GameArchiveReader archive, boolean trusted, boolean computeDigests, long[] expectedDigests) {
+        if (expectedDigests != null && expectedDigests.length != archive.size())
+            throw new IllegalArgumentException(String.format("Digests cover %d games, the archive has %d.", expectedDigests.length, archive.size()));
+        this.archive = archive;
+        this.trusted = trusted;
+        this.digests = computeDigests || expectedDigests != null ? new long[archive.size()] : null;
+        this.expectedDigests = expectedDigests;
+    }
+
+    public long[] getDigests() { return digests; }
+
+    // Totals of a range of games, merged up the task tree.
+    public static class Totals {
+        private long games = 0, plies = 0, mismatches = 0;
+        private final List<String> errors = new ArrayList<String>();
+
+        public long getGames() { return games; }
+        public long getPlies() { return plies; }
+        public long getMismatches() { return mismatches; }
+        // Messages of the first mismatches, in archive order.
+        public List<String> getErrors() { return errors; }
+
+        private void addError(String error) {
+            mismatches++;
+            if (errors.size() < MaxReportedErrors) errors.add(error);
+        }
+
+        private void add(Totals other) {
+            games += other.games;
+            plies += other.plies;
+            mismatches += other.mismatches;
+            for (int i = 0; i < other.errors.size() && errors.size() < MaxReportedErrors; i++)
+                errors.add(other.errors.get(i));
+        }
+    }
+
+    public Totals verify(ForkJoinPool pool) { return pool.invoke(new VerifyTask(0, archive.size())); }
+
+    @SuppressWarnings("serial")
+    private class VerifyTask extends RecursiveTask<Totals> {
+        private final int start, end;
+
+        VerifyTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override protected Totals compute() {
+            if (end - start > GamesPerTask) {
+                int middle = (start + end) >>> 1;
+                VerifyTask second = new VerifyTask(middle, end);
+                second.fork();
+                Totals totals = new VerifyTask(start, middle).compute();
+                totals.add(second.join());
+                return totals;
+            }
+            Totals totals = new Totals();
+            for (int index = start; index < end; index++) {
+                GameRecord record = archive.get(index);
+                totals.games++;
+                totals.plies += record.getPlyCount();
+                String error;
+                try {
+                    error = verify(index, record);
+                } catch (GameException | ParseException | RuntimeException e) {
+                    error = e.toString();
+                }
+                if (error != null)
+                    totals.addError(String.format("Game %d: %s", index, error));
+            }
+            return totals;
+        }
+    }
+
+    // Returns a description of the mismatch, null when the game replays as recorded.
+    private String verify(int index, GameRecord record) throws GameException, ParseException {
+        Game game = record.getStartFen() != null ? new Game(record.getStartFen(), record.isCrazyHouse()) : new Game(record.getSeed(), record.isCrazyHouse());
+        long digest = DigestSeed;
+        for (int ply = 0; ply < record.getPlyCount(); ply++) {
+            int move = record.getMove(ply);
+            if (trusted) {
+                if (digests != null)
+                    digest = addToDigest(digest, game.getBoard().getAlgebraicMoveUnsafe(move));
+                game.applyMoveTrusted(move);
+                if (digests != null)
+                    digest = addToDigest(digest, game.getBoard().toFenString(false));
+            } else {
+                if (game.getGameResult() != GameResult.Undecided)
+                    return String.format("ended by %s before ply %d of %d", game.getGameResult(), ply + 1, record.getPlyCount());
+                ViewData viewData = game.applyMove(PackedMove.toMove(move));
+                if (digests != null)
+                    digest = addToDigest(addToDigest(digest, viewData.getMove()), viewData.getFen());
+            }
+        }
+
+        if (digests != null) {
+            digests[index] = digest;
+            if (expectedDigests != null && expectedDigests[index] != digest)
+                return "SAN or FEN differs from the saved digest";
+        }
+        GameResult result = game.getGameResult();
+        if (result != record.getResult() && !(result == GameResult.Undecided && isExternal(record.getResult())))
+            return String.format("replayed result %s, recorded %s", result, record.getResult());
+        return null;
+    }
+
+    // Results decided outside the board, which a replay alone cannot reach.
+    private static boolean isExternal(GameResult result) {
+        switch (result) {
+            case WhiteResigns: case BlackResigns: case DrawByAgreement:
+            case WhiteWinsByTablebase: case BlackWinsByTablebase: case TablebaseDraw:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // FNV-1a over the characters of the text and a separator.
+    private static long addToDigest(long digest, String text) {
+        for (int i = 0; i < text.length(); i++)
+            digest = (digest ^ text.charAt(i)) * DigestPrime;
+        return (digest ^ '\n') * DigestPrime;
+    }
+
+    private static long[] readDigests(String file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(file))))) {
+            long[] digests = new long[in.readInt()];
+            for (int i = 0; i < digests.length; i++)
+                digests[i] = in.readLong();
+            return digests;
+        }
+    }
+
+    private static void writeDigests(String file, long[] digests) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(file))))) {
+            out.writeInt(digests.length);
+            for (long digest : digests)
+                out.writeLong(digest);
+        }
+    }
+
+    // Usage: ReplayVerifier [-threads N] [-trusted] [-save digests] [-compare digests] archive
+    // Without -trusted, every move is checked as the referee does. -save writes the digests of the replays, -compare checks them against a saved file.
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean trusted = false;
+        String saveFile = null, compareFile = null;
+        int i = 0;
+        for (; i < args.length - 1; i++) {
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-trusted"))
+                trusted = true;
+            else if (args[i].equals("-save"))
+                saveFile = args[++i];
+            else if (args[i].equals("-compare"))
+                compareFile = args[++i];
+            else
+                break;
+        }
+        if (i != args.length - 1) {
+            System.err.println("Usage: ReplayVerifier [-threads N] [-trusted] [-save digests] [-compare digests] archive");
+            System.exit(1);
+        }
+
+        try (GameArchiveReader archive = new GameArchiveReader(Paths.get(args[i]))) {
+            ReplayVerifier verifier = new ReplayVerifier(archive, trusted, saveFile != null, compareFile != null ? readDigests(compareFile) : null);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long start = System.nanoTime();
+            Totals totals = verifier.verify(pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+            if (saveFile != null)
+                writeDigests(saveFile, verifier.getDigests());
+
+            System.out.println(String.format("Games: %d, plies: %d, mismatches: %d", totals.getGames(), totals.getPlies(), totals.getMismatches()));
+            System.out.println(String.format("Time: %.1fs, %.0f games/s, %.0f plies/s", seconds, totals.getGames() / seconds, totals.getPlies() / seconds));
+            for (String error : totals.getErrors())
+                System.out.println(error);
+            if (totals.getMismatches() > 0)
+                System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package cc.recursive.chess;
+
+// Iterative deepening alpha-beta search with quiescence, a transposition table and moves ordered by hash move, MVV-LVA, killers and history.
+// https://www.chessprogramming.org/Alpha-Beta
+public class Search {
+    public static final int MaxPly = 64;
+    public static final int Infinity = 32000;
+    // Score of being checkmated at the root, mates further away score closer to zero.
+    public static final int Mate = 31000;
+    // Scores beyond this bound are mates, stored in the table relative to the node instead of the root.
+    private static final int MateBound = Mate - MaxPly;
+
+    // Centipawn values indexed by piece type.
+    private static final int[] PieceValues = { 100, 320, 330, 500, 900, 0 };
+    // Bonus by square for white pieces indexed by piece type, from a1 to h8, black pieces use the square mirrored vertically.
+    // https://www.chessprogramming.org/Simplified_Evaluation_Function
+    private static final int[][] SquareBonus = {
+        {   0,   0,   0,   0,   0,   0,   0,   0,
+            5,  10,  10, -20, -20,  10,  10,   5,
+            5,  -5, -10,   0,   0, -10,  -5,   5,
+            0,   0,   0,  20,  20,   0,   0,   0,
+            5,   5,  10,  25,  25,  10,   5,   5,
+           10,  10,  20,  30,  30,  20,  10,  10,
+           50,  50,  50,  50,  50,  50,  50,  50,
+            0,   0,   0,   0,   0,   0,   0,   0 },
+        { -50, -40, -30, -30, -30, -30, -40, -50,
+          -40, -20,   0,   5,   5,   0, -20, -40,
+          -30,   5,  10,  15,  15,  10,   5, -30,
+          -30,   0,  15,  20,  20,  15,   0, -30,
+          -30,   5,  15,  20,  20,  15,   5, -30,
+          -30,   0,  10,  15,  15,  10,   0, -30,
+          -40, -20,   0,   0,   0,   0, -20, -40,
+          -50, -40, -30, -30, -30, -30, -40, -50 },
+        { -20, -10, -10, -10, -10, -10, -10, -20,
+          -10,   5,   0,   0,   0,   0,   5, -10,
+          -10,  10,  10,  10,  10,  10,  10, -10,
+          -10,   0,  10,  10,  10,  10,   0, -10,
+          -10,   5,   5,  10,  10,   5,   5, -10,
+          -10,   0,   5,  10,  10,   5,   0, -10,
+          -10,   0,   0,   0,   0,   0,   0, -10,
+          -20, -10, -10, -10, -10, -10, -10, -20 },
+        {   0,   0,   0,   5,   5,   0,   0,   0,
+           -5,   0,   0,   0,   0,   0,   0,  -5,
+           -5,   0,   0,   0,   0,   0,   0,  -5,
+           -5,   0,   0,   0,   0,   0,   0,  -5,
+           -5,   0,   0,   0,   0,   0,   0,  -5,
+           -5,   0,   0,   0,   0,   0,   0,  -5,
+            5,  10,  10,  10,  10,  10,  10,   5,
+            0,   0,   0,   0,   0,   0,   0,   0 },
+        { -20, -10, -10,  -5,  -5, -10, -10, -20,
+          -10,   0,   5,   0,   0,   0,   0, -10,
+          -10,   5,   5,   5,   5,   5,   0, -10,
+            0,   0,   5,   5,   5,   5,   0,  -5,
+           -5,   0,   5,   5,   5,   5,   0,  -5,
+          -10,   0,   5,   5,   5,   5,   0, -10,
+          -10,   0,   0,   0,   0,   0,   0, -10,
+          -20, -10, -10,  -5,  -5, -10, -10, -20 },
+        {  20,  30,  10,   0,   0,  10,  30,  20,
+           20,  20,   0,   0,   0,   0,  20,  20,
+          -10, -20, -20, -20, -20, -20, -20, -10,
+          -20, -30, -30, -40, -40, -30, -30, -20,
+          -30, -40, -40, -50, -50, -40, -40, -30,
+          -30, -40, -40, -50, -50, -40, -40, -30,
+          -30, -40, -40, -50, -50, -40, -40, -30,
+          -30, -40, -40, -50, -50, -40, -40, -30 },
+    };
+    private static final int Tempo = 10;
+    private static final PieceType[] PieceTypes = PieceType.values();
+
+    // Move ordering scores, history scores stay below killers.
+    private static final int HashMoveScore = 1 << 30;
+    private static final int CaptureScore = 1 << 28;
+    private static final int KillerScore = 1 << 26;
+    private static final int MaxHistory = 1 << 24;
+
+    // Bounds of table scores.
+    private static final int Exact = 0;
+    private static final int Lower = 1;
+    private static final int Upper = 2;
+
+    // Nodes searched between two reads of the clock.
+    private static final int ClockInterval = 256;
+
+    // Transposition table entries, the data packs move, score, depth and bound.
+    private final long[] tableKeys;
+    private final long[] tableData;
+    private final int tableMask;
+    private final int[][] killers = new int[MaxPly][2];
+    // Cutoffs caused by quiet moves, indexed by origin and destination, drops having both equal.
+    private final int[][] history = new int[Constants.Squares][Constants.Squares];
+    private final MoveList[] moveLists = new MoveList[MaxPly];
+    private final int[][] moveScores = new int[MaxPly][];
+    // Hashes of the game positions before the root followed by those of the search path, to detect repetitions.
+    private final long[] hashes = new long[Constants.MaxMovesPerGame * 2 + MaxPly + 1];
+    private int gameLength = 0;
+
+    private Board board = null;
+    private long deadline = 0;
+    private boolean stopped = false;
+    private long nodes = 0;
+    private long elapsedNanos = 0;
+    private int completedDepth = 0;
+    private int score = 0;
+    private int rootMove = PackedMove.None;
+
+    // The table holds 2^tableBits entries of 16 bytes.
+    public Search(int tableBits) {
+        tableKeys = new long[1 << tableBits];
+        tableData = new long[1 << tableBits];
+        tableMask = (1 << tableBits) - 1;
+        for (int ply = 0; ply < MaxPly; ply++) {
+            moveLists[ply] = new MoveList();
+            moveScores[ply] = new int[256];
+        }
+    }
+
+    // Forgets the positions of the previous game, the table is kept since its entries are checked by hash.
+    public void clearHistory() { gameLength = 0; }
+
+    // Adds a position played before the next root, in order, so that the search can avoid or seek repetitions.
+    public void addHistory(long hash) {
+        if (gameLength == hashes.length - MaxPly) return;
+        hashes[gameLength++] = hash;
+    }
+
+    public long getNodes() { return nodes; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    // Depth of the last iteration searched to the end.
+    public int getCompletedDepth() { return completedDepth; }
+    // Score of the last completed iteration in centipawns for the side to play.
+    public int getScore() { return score; }
+    public long getNodesPerSecond() { return elapsedNanos > 0 ? nodes * 1000000000L / elapsedNanos : 0; }
+
+    // Searches deeper and deeper until maxDepth is reached, an iteration ends after softNanos or hardNanos have elapsed.
+    // Returns the best move of the deepest iteration, or a better one found by an interrupted iteration, PackedMove.None without legal moves.
+    public int search(Board board, int maxDepth, long softNanos, long hardNanos) {
+        long start = System.nanoTime();
+        this.board = board;
+        deadline = start + hardNanos;
+        stopped = false;
+        nodes = 0;
+        completedDepth = 0;
+        score = 0;
+        rootMove = PackedMove.None;
+        for (int[] plyKillers : killers)
+            plyKillers[0] = plyKillers[1] = PackedMove.None;
+        // Older cutoffs matter less than those of this search.
+        for (int[] fromHistory : history) {
+            for (int to = 0; to < Constants.Squares; to++)
+                fromHistory[to] >>= 2;
+        }
+
+        for (int depth = 1; depth <= Math.min(maxDepth, MaxPly - 1); depth++) {
+            int result = alphaBeta(depth, -Infinity, Infinity, 0);
+            if (stopped) break;
+            completedDepth = depth;
+            score = result;
+            // The next iteration would not end in time, and a mate needs no deeper look.
+            if (System.nanoTime() - start >= softNanos || Math.abs(result) >= MateBound) break;
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return rootMove;
+    }
+
+    private int alphaBeta(int depth, int alpha, int beta, int ply) {
+        boolean inCheck = board.isKingAttacked(board.getColorToPlay());
+        // Checks are extended so that the quiescence search does not start in check too often.
+        if (inCheck) depth++;
+        if (depth <= 0) return quiescence(alpha, beta, ply);
+        if (ply == MaxPly - 1) return evaluate();
+        if ((++nodes & (ClockInterval - 1)) == 0 && System.nanoTime() >= deadline) stopped = true;
+        if (stopped) return 0;
+
+        long hash = board.getHash();
+        hashes[gameLength + ply] = hash;
+        if (ply > 0 && isDraw(hash, ply)) return 0;
+
+        int hashMove = PackedMove.None;
+        int slot = (int)hash & tableMask;
+        if (tableKeys[slot] == hash) {
+            long data = tableData[slot];
+            hashMove = (int)(data & 0xFFFF);
+            int entryScore = fromTable((int)((data >>> 16) & 0xFFFF) - 32768, ply);
+            int entryDepth = (int)((data >>> 32) & 0xFF);
+            int bound = (int)((data >>> 40) & 0x3);
+            if (ply > 0 && entryDepth >= depth && (bound == Exact || (bound == Lower && entryScore >= beta) || (bound == Upper && entryScore <= alpha)))
+                return entryScore;
+        }
+
+        MoveList moves = moveLists[ply];
+        board.generateMoves(moves);
+        if (moves.isEmpty())
+            return inCheck ? -Mate + ply : 0;
+        int[] scores = scoreMoves(moves, ply, hashMove);
+
+        int originalAlpha = alpha;
+        int bestScore = -Infinity;
+        int bestMove = PackedMove.None;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = pickMove(moves, scores, i);
+            board.makeMove(move);
+            int result;
+            // Moves after the first are searched with a null window, and again in full only if they look better.
+            if (i == 0)
+                result = -alphaBeta(depth - 1, -beta, -alpha, ply + 1);
+            else {
+                result = -alphaBeta(depth - 1, -alpha - 1, -alpha, ply + 1);
+                if (result > alpha && result < beta)
+                    result = -alphaBeta(depth - 1, -beta, -alpha, ply + 1);
+            }
+            board.unmakeMove();
+            if (stopped) return 0;
+
+            if (result > bestScore) {
+                bestScore = result;
+                bestMove = move;
+                // The first move is the best one of the previous iteration, others must prove better to replace it.
+                if (ply == 0) rootMove = move;
+                if (result > alpha) {
+                    alpha = result;
+                    if (result >= beta) {
+                        if (scores[i] < CaptureScore) addCutoff(move, depth, ply);
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScore >= beta ? Lower : bestScore > originalAlpha ? Exact : Upper;
+        tableKeys[slot] = hash;
+        tableData[slot] = (bestMove & 0xFFFFL) | ((long)(toTable(bestScore, ply) + 32768) << 16) | ((long)Math.min(depth, 0xFF) << 32) | ((long)bound << 40);
+        return bestScore;
+    }
+
+    // Searches captures and promotions until the position is quiet, or every evasion when in check.
+    private int quiescence(int alpha, int beta, int ply) {
+        if ((++nodes & (ClockInterval - 1)) == 0 && System.nanoTime() >= deadline) stopped = true;
+        if (stopped) return 0;
+        if (ply == MaxPly - 1) return evaluate();
+
+        boolean inCheck = board.isKingAttacked(board.getColorToPlay());
+        MoveList moves = moveLists[ply];
+        int bestScore;
+        if (inCheck) {
+            board.generateMoves(moves);
+            if (moves.isEmpty())
+                return -Mate + ply;
+            bestScore = -Infinity;
+        } else {
+            // The side to play may stand pat instead of capturing.
+            bestScore = evaluate();
+            if (bestScore >= beta) return bestScore;
+            if (bestScore > alpha) alpha = bestScore;
+            board.generateMoves(moves, MoveStages.Captures);
+        }
+        int[] scores = scoreMoves(moves, ply, PackedMove.None);
+
+        for (int i = 0; i < moves.size(); i++) {
+            int move = pickMove(moves, scores, i);
+            board.makeMove(move);
+            int result = -quiescence(-beta, -alpha, ply + 1);
+            board.unmakeMove();
+            if (stopped) return 0;
+            if (result > bestScore) {
+                bestScore = result;
+                if (result > alpha) {
+                    alpha = result;
+                    if (result >= beta) break;
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    // Draws by the fifty-move rule, the move limit, material or repetition, a single repetition being enough inside the search.
+    private boolean isDraw(long hash, int ply) {
+        int clock = board.getHalfMoveClock();
+        if (clock >= 100 || board.getHalfMoves() >= Constants.MaxMovesPerGame * 2 || !board.hasSufficientMaterial())
+            return true;
+        int index = gameLength + ply;
+        for (int i = index - 2; i >= Math.max(0, index - clock); i -= 2) {
+            if (hashes[i] == hash) return true;
+        }
+        return false;
+    }
+
+    // Static evaluation in centipawns for the side to play.
+    public int evaluate() {
+        int result = 0;
+        for (PieceType pieceType : PieceTypes) {
+            int type = pieceType.ordinal();
+            for (long pieces = board.getPieceBitboard(Color.White, pieceType); pieces != 0; pieces &= pieces - 1)
+                result += PieceValues[type] + SquareBonus[type][Long.numberOfTrailingZeros(pieces)];
+            for (long pieces = board.getPieceBitboard(Color.Black, pieceType); pieces != 0; pieces &= pieces - 1)
+                result -= PieceValues[type] + SquareBonus[type][Long.numberOfTrailingZeros(pieces) ^ (Constants.Squares - Constants.Columns)];
+        }
+        if (board.isCrazyHouse()) {
+            for (PieceType pieceType : Constants.ReservePieces)
+                result += (board.getReserve(Color.White, pieceType) - board.getReserve(Color.Black, pieceType)) * PieceValues[pieceType.ordinal()];
+        }
+        return (board.getColorToPlay() == Color.White ? result : -result) + Tempo;
+    }
+
+    private int[] scoreMoves(MoveList moves, int ply, int hashMove) {
+        if (moveScores[ply].length < moves.size())
+            moveScores[ply] = new int[moves.size() * 2];
+        int[] scores = moveScores[ply];
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int captureScore = getCaptureScore(move);
+            if (move == hashMove)
+                scores[i] = HashMoveScore;
+            else if (captureScore > 0)
+                scores[i] = CaptureScore + captureScore;
+            else if (move == killers[ply][0])
+                scores[i] = KillerScore + 1;
+            else if (move == killers[ply][1])
+                scores[i] = KillerScore;
+            else
+                scores[i] = history[PackedMove.getFrom(move)][PackedMove.getTo(move)];
+        }
+        return scores;
+    }
+
+    // Most valuable victim first, then least valuable attacker, queen promotions counting as captures. Zero for other moves.
+    private int getCaptureScore(int move) {
+        if (PackedMove.isCastling(move) || PackedMove.isDrop(move)) return 0;
+        int from = PackedMove.getFrom(move), to = PackedMove.getTo(move);
+        PieceType attacker = board.get(Square.fromIndex(from)).getPieceType();
+        Piece victim = board.get(Square.fromIndex(to));
+        int result = 0;
+        if (victim != null)
+            result = (victim.getPieceType().ordinal() + 1) * 8 - attacker.ordinal();
+        // En-passant, the only capture of a pawn changing column towards an empty square.
+        else if (attacker == PieceType.Pawn && from % Constants.Columns != to % Constants.Columns)
+            result = 8 - attacker.ordinal();
+        if (PackedMove.isPromotion(move) && PackedMove.getPieceType(move) == PieceType.Queen)
+            result += PieceType.Queen.ordinal() * 8;
+        return result;
+    }
+
+    // Brings the best scored remaining move to the given index, sorting only as far as the search goes.
+    private static int pickMove(MoveList moves, int[] scores, int index) {
+        int best = index;
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+        if (best != index) {
+            moves.swap(index, best);
+            int score = scores[index];
+            scores[index] = scores[best];
+            scores[best] = score;
+        }
+        return moves.get(index);
+    }
+
+    private void addCutoff(int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] fromHistory = history[PackedMove.getFrom(move)];
+        int to = PackedMove.getTo(move);
+        fromHistory[to] += depth * depth;
+        if (fromHistory[to] >= MaxHistory) {
+            for (int[] entries : history) {
+                for (int i = 0; i < Constants.Squares; i++)
+                    entries[i] >>= 1;
+            }
+        }
+    }
+
+    private static int toTable(int score, int ply) { return score >= MateBound ? score + ply : score <= -MateBound ? score - ply : score; }
+    private static int fromTable(int score, int ply) { return score >= MateBound ? score - ply : score <= -MateBound ? score + ply : score; }
+}
@@ -0,0 +1,116 @@
+package cc.recursive.chess;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+
+// Reference boss playing with Search, either in process through Agent or as a program speaking the referee protocol.
+// Each move gets a fixed share of the referee turn limit, since there is no clock for the whole game.
+public class SearchAgent implements Agent, Protocol.Player {
+    // Limits of the referee: the configuration turn gets the first turn limit, every move gets the turn limit.
+    public static final long TurnMillis = 50;
+    public static final long FirstTurnMillis = 1000;
+    // Shares of the turn limit after which no iteration is started and the running one is interrupted.
+    // The rest covers the protocol round trip and JVM pauses.
+    private static final double SoftShare = 0.25;
+    private static final double HardShare = 0.5;
+    private static final int TableBits = 20;
+
+    private final Search search = new Search(TableBits);
+    private final long turnMillis;
+    // Game of the last position seen, to forget the positions of a previous game.
+    private int gameNumber = 0;
+    private int lastHalfMoves = -1;
+
+    public SearchAgent() { this(TurnMillis); }
+    public SearchAgent(long turnMillis) { this.turnMillis = turnMillis; }
+
+    public Search getSearch() { return search; }
+
+    @Override
+    public Move play(Board board, List<Move> legalMoves, GameContext context) {
+        Move move = PackedMove.toMove(think(board, context.getGameNumber()));
+        context.setComment(getComment());
+        return move;
+    }
+
+    @Override
+    public void warmUp(Board board) { search.search(board, Search.MaxPly, FirstTurnMillis * 200000L, FirstTurnMillis * 300000L); }
+
+    // Searches the position and records it along with the answer for the repetition detection of the next turns.
+    @Override
+    public int think(Board board, int gameNumber) {
+        if (gameNumber != this.gameNumber || board.getHalfMoves() <= lastHalfMoves)
+            search.clearHistory();
+        this.gameNumber = gameNumber;
+        lastHalfMoves = board.getHalfMoves();
+
+        MoveList legalMoves = board.getLegalMoves();
+        int move;
+        // A forced move needs no search.
+        if (legalMoves.size() == 1)
+            move = legalMoves.get(0);
+        else {
+            move = search.search(board, Search.MaxPly, (long)(turnMillis * SoftShare * 1e6), (long)(turnMillis * HardShare * 1e6));
+            if (move == PackedMove.None)
+                move = legalMoves.get(0);
+        }
+
+        search.addHistory(board.getHash());
+        board.makeMove(move);
+        search.addHistory(board.getHash());
+        board.unmakeMove();
+        return move;
+    }
+
+    @Override
+    public String getReport() {
+        return String.format("depth %d score %d nodes %d time %.1fms %d nodes/s", search.getCompletedDepth(), search.getScore(), search.getNodes(),
+            search.getElapsedNanos() / 1e6, search.getNodesPerSecond());
+    }
+
+    @Override
+    public String getComment() {
+        return String.format("d%d %+d %dkn/s", search.getCompletedDepth(), search.getScore(), search.getNodesPerSecond() / 1000);
+    }
+
+    // Searches positions for a fixed time to measure the search speed, after a first pass warming up the JIT.
+    private static void bench(long millis) throws ParseException {
+        String[][] positions = {
+            { "Standard", new Board(0, false).toFenString(false), "0" },
+            { "Middlegame", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "0" },
+            { "Chess960", StartPosition.get(0).getFen(), "0" },
+            { "Endgame", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", "0" },
+            { "Crazyhouse", "r2qk2r/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2QK2R/NBPnbp w AHah - 0 7", "1" },
+        };
+        long nodes = 0, nanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (String[] position : positions) {
+                SearchAgent agent = new SearchAgent(millis);
+                Board board = new Board(position[1], position[2].equals("1"));
+                // Searches even forced moves, with limits proportional to the given time.
+                agent.search.search(board, Search.MaxPly, (long)(millis * SoftShare * 1e6), (long)(millis * HardShare * 1e6));
+                if (pass == 0) continue;
+                System.out.println(String.format("%s: %s", position[0], agent.getReport()));
+                nodes += agent.search.getNodes();
+                nanos += agent.search.getElapsedNanos();
+            }
+        }
+        System.out.println(String.format("Total: %d nodes in %.1fms, %d nodes/s", nodes, nanos / 1e6, nanos > 0 ? nodes * 1000000000L / nanos : 0));
+    }
+
+    // Usage: SearchAgent [-bench [millis]] [-turn millis]
+    // Without -bench, plays through the referee protocol on the standard input and output, reporting each search on the error output.
+    public static void main(String[] args) throws IOException, ParseException {
+        long turnMillis = TurnMillis;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-bench")) {
+                bench(i + 1 < args.length ? Long.parseLong(args[i + 1]) : 1000);
+                return;
+            } else if (args[i].equals("-turn"))
+                turnMillis = Long.parseLong(args[++i]);
+        }
+
+        Protocol.play(new SearchAgent(turnMillis), "game", "fen");
+    }
+}
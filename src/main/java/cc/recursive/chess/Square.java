@@ -3,7 +3,34 @@ package cc.recursive.chess;
 import java.text.ParseException;
 
 public class Square {
-    private int column = 0, row = 0;
+    // Canonical instances indexed by square index, to avoid allocating squares in loops.
+    private static final Square[] Squares = new Square[Constants.Squares];
+    // Neighbours reachable by a knight or a king from each square.
+    private static final Square[][] KnightNeighbours = new Square[Constants.Squares][];
+    private static final Square[][] KingNeighbours = new Square[Constants.Squares][];
+    // Squares reached step by step from each square in each direction, until the edge of the board.
+    private static final Square[][][] Rays = new Square[Constants.Squares][Constants.Directions][];
+
+    static {
+        for (int index = 0; index < Constants.Squares; index++)
+            Squares[index] = new Square(index % Constants.Columns, index / Constants.Columns);
+        for (Square square : Squares) {
+            KnightNeighbours[square.getIndex()] = square.offsets(Constants.KnightDeltaColumn, Constants.KnightDeltaRow);
+            KingNeighbours[square.getIndex()] = square.offsets(Constants.DirectionDeltaColumn, Constants.DirectionDeltaRow);
+            for (int direction = 0; direction < Constants.Directions; direction++) {
+                int deltaColumn = Constants.DirectionDeltaColumn[direction], deltaRow = Constants.DirectionDeltaRow[direction];
+                int length = 0;
+                for (Square to = square.offset(deltaColumn, deltaRow); to != null; to = to.offset(deltaColumn, deltaRow))
+                    length++;
+                Square[] ray = new Square[length];
+                for (int range = 0; range < length; range++)
+                    ray[range] = of(square.column + deltaColumn * (range + 1), square.row + deltaRow * (range + 1));
+                Rays[square.getIndex()][direction] = ray;
+            }
+        }
+    }
+
+    private final int column, row;
 
     public Square(int column, int row) { this.column = column; this.row = row; }
     public Square(String str) throws ParseException {
@@ -14,19 +41,26 @@ public class Square {
 
     public int getColumn()   { return column; }
     public int getRow()      { return row; }
+    // Index of the square in bitboards.
+    public int getIndex()    { return row * Constants.Columns + column; }
 
     // Returns whether this square is a light or dark square.
     public boolean isLight() { return ((column & 1) != 0) ^ ((row & 1) != 0); }
 
-    // Returns a new square offset by the given directions or null if invalid.
+    // Returns the square offset by the given directions or null if invalid.
     public Square offset(int deltaColumn, int deltaRow) {
         int newColumn = column + deltaColumn;
         int newRow = row + deltaRow;
         if (newColumn < 0 || newColumn >= Constants.Columns || newRow < 0 || newRow >= Constants.Rows)
             return null;
-        return new Square(newColumn, newRow);
+        return of(newColumn, newRow);
     }
 
+    public Square[] getKnightNeighbours() { return KnightNeighbours[getIndex()]; }
+    public Square[] getKingNeighbours() { return KingNeighbours[getIndex()]; }
+    // Direction is an index in Constants.DirectionDeltaColumn and Constants.DirectionDeltaRow.
+    public Square[] getRay(int direction) { return Rays[getIndex()][direction]; }
+
     @Override public String toString() { return Character.toString(columnToChar(column)) + rowToChar(row); }
 
     @Override public boolean equals(Object o) {
@@ -35,7 +69,28 @@ public class Square {
         Square other = (Square)o;
         return column == other.column && row == other.row;
     }
-    @Override public int hashCode() { return row * 8 + column; }
+    @Override public int hashCode() { return getIndex(); }
+
+    // Squares reachable with the given offsets, skipping the ones outside the board.
+    private Square[] offsets(int[] deltaColumns, int[] deltaRows) {
+        int count = 0;
+        Square[] result = new Square[deltaColumns.length];
+        for (int i = 0; i < deltaColumns.length; i++) {
+            Square to = offset(deltaColumns[i], deltaRows[i]);
+            if (to != null) result[count++] = to;
+        }
+        Square[] trimmed = new Square[count];
+        System.arraycopy(result, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    public static Square of(int column, int row) { return Squares[row * Constants.Columns + column]; }
+    public static Square fromIndex(int index) { return Squares[index]; }
+
+    public static Square fromString(String str) throws ParseException {
+        if (str.length() != 2) throw new ParseException(String.format("'%s' is not a square.", str), 0);
+        return of(charToColumn(str.charAt(0)), charToRow(str.charAt(1)));
+    }
 
     public static char columnToChar(int column) { return (char)('a' + column); }
 
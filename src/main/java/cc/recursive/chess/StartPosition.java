@@ -0,0 +1,125 @@
+package cc.recursive.chess;
+
+import java.util.Random;
+
+// Catalog of the 960 Chess960 start positions, numbered as by Scharnagl so that the classic setup is 518.
+// https://en.wikipedia.org/wiki/Fischer_random_chess_numbering_scheme
+// Each position keeps what every game starting from it would otherwise compute again: FEN, hash and legal moves.
+public class StartPosition {
+    public static final int Count = 960;
+    public static final int ClassicIndex = 518;
+
+    // Columns of both knights among the five squares left after bishops and queen, for each knight code.
+    private static final int[][] KnightColumns = { {0, 1}, {0, 2}, {0, 3}, {0, 4}, {1, 2}, {1, 3}, {1, 4}, {2, 3}, {2, 4}, {3, 4} };
+    private static final StartPosition[] Positions = new StartPosition[Count];
+
+    static {
+        for (int index = 0; index < Count; index++) {
+            StartPosition position = new StartPosition(index);
+            Board board = new Board(position, false);
+            position.fen = board.toFenString(false);
+            position.hash = board.getHash();
+            MoveList moves = board.getLegalMoves();
+            position.openingMoves = new int[moves.size()];
+            for (int i = 0; i < moves.size(); i++)
+                position.openingMoves[i] = moves.get(i);
+            Positions[index] = position;
+        }
+    }
+
+    private final int index;
+    // Pieces of the initial row from column a to h.
+    private final PieceType[] backRank;
+    private String fen;
+    private long hash;
+    // Legal moves of the position in generation order, null while the catalog is being built.
+    private int[] openingMoves = null;
+
+    private StartPosition(int index) {
+        this.index = index;
+        backRank = new PieceType[Constants.Columns];
+        int rest = index;
+        backRank[(rest % 4) * 2 + 1] = PieceType.Bishop;
+        rest /= 4;
+        backRank[(rest % 4) * 2] = PieceType.Bishop;
+        rest /= 4;
+        placeOnEmpty(backRank, rest % 6, PieceType.Queen);
+        int[] knights = KnightColumns[rest / 6];
+        // The second knight is counted before the first one is placed.
+        placeOnEmpty(backRank, knights[1], PieceType.Knight);
+        placeOnEmpty(backRank, knights[0], PieceType.Knight);
+        placeOnEmpty(backRank, 0, PieceType.Rook);
+        placeOnEmpty(backRank, 0, PieceType.King);
+        placeOnEmpty(backRank, 0, PieceType.Rook);
+    }
+
+    private static void placeOnEmpty(PieceType[] backRank, int emptyColumn, PieceType pieceType) {
+        for (int column = 0; column < Constants.Columns; column++) {
+            if (backRank[column] != null) continue;
+            if (emptyColumn == 0) {
+                backRank[column] = pieceType;
+                return;
+            }
+            emptyColumn--;
+        }
+        throw new IllegalArgumentException("Not enough empty columns to satisfy argument");
+    }
+
+    public int getIndex() { return index; }
+    public PieceType[] getBackRank() { return backRank.clone(); }
+    public PieceType getBackRankPiece(int column) { return backRank[column]; }
+    // FEN of the position without crazyhouse reserves.
+    public String getFen() { return fen; }
+    public long getHash() { return hash; }
+    public int[] getOpeningMoves() { return openingMoves; }
+
+    public static StartPosition get(int index) { return Positions[index]; }
+    public static StartPosition fromSeed(long seed) { return Positions[getIndex(seed)]; }
+
+    // Scharnagl number of the position the referee sets up for a seed.
+    // Seed 0 means the classic setup, other seeds pick pieces at random as described at https://en.wikipedia.org/wiki/Chess960#Setup
+    public static int getIndex(long seed) {
+        if (seed == 0) return ClassicIndex;
+        PieceType[] backRank = new PieceType[Constants.Columns];
+        Random rng = new Random(seed);
+        backRank[rng.nextInt(4) * 2] = PieceType.Bishop;
+        backRank[rng.nextInt(4) * 2 + 1] = PieceType.Bishop;
+        placeOnEmpty(backRank, rng.nextInt(6), PieceType.Queen);
+        placeOnEmpty(backRank, rng.nextInt(5), PieceType.Knight);
+        placeOnEmpty(backRank, rng.nextInt(4), PieceType.Knight);
+        return getIndex(backRank);
+    }
+
+    // Scharnagl number of an initial row, which needs only bishops, queen and knights placed.
+    public static int getIndex(PieceType[] backRank) {
+        int lightBishop = -1, darkBishop = -1, queen = -1, firstKnight = -1, secondKnight = -1;
+        int emptyAfterBishops = 0, emptyAfterQueen = 0;
+        for (int column = 0; column < Constants.Columns; column++) {
+            PieceType pieceType = backRank[column];
+            if (pieceType == PieceType.Bishop) {
+                if (column % 2 == 1)
+                    lightBishop = column / 2;
+                else
+                    darkBishop = column / 2;
+                continue;
+            }
+            if (pieceType == PieceType.Queen)
+                queen = emptyAfterBishops;
+            else {
+                if (pieceType == PieceType.Knight) {
+                    if (firstKnight == -1)
+                        firstKnight = emptyAfterQueen;
+                    else
+                        secondKnight = emptyAfterQueen;
+                }
+                emptyAfterQueen++;
+            }
+            emptyAfterBishops++;
+        }
+        if (lightBishop == -1 || darkBishop == -1 || queen == -1 || secondKnight == -1) throw new IllegalArgumentException("Initial row is not a Chess960 setup.");
+        int knights = 0;
+        while (KnightColumns[knights][0] != firstKnight || KnightColumns[knights][1] != secondKnight)
+            knights++;
+        return ((knights * 6 + queen) * 4 + darkBishop) * 4 + lightBishop;
+    }
+}
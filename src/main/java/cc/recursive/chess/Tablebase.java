@@ -0,0 +1,297 @@
+package cc.recursive.chess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Endgame tables giving the distance to mate with perfect play of every position with at most four pieces, kings included.
+// A material set, named like KQvKR, is a file of one byte per position mapped in memory, only the pages probed are read.
+// An entry is 0 for a draw, n > 0 when the side to play mates in 2n-1 plies, n < 0 when it is mated in -2n-2 plies, Illegal for impossible positions.
+// Castling and en-passant are not covered, positions allowing them are not probed.
+public class Tablebase {
+    public static final int MaxPieces = 4;
+    public static final byte Illegal = -128;
+    // Returned by probe when no table covers the position.
+    public static final int Missing = Integer.MIN_VALUE;
+    public static final String Extension = ".dtm";
+
+    // File header: magic "CGTB" and format version.
+    static final int Magic = 0x43475442;
+    static final int Version = 1;
+    static final int HeaderBytes = 8;
+
+    // Order of the pieces after the king in material keys, also their order in tables.
+    private static final PieceType[] KeyOrder = { PieceType.Queen, PieceType.Rook, PieceType.Bishop, PieceType.Knight, PieceType.Pawn };
+
+    // Squares of the white king after symmetries: the a1-d1-d4 triangle without pawns, the a-d columns with pawns.
+    private static final int[] TriangleSquares = { 0, 1, 2, 3, 9, 10, 11, 18, 19, 27 };
+    private static final int[] HalfSquares = new int[Constants.Squares / 2];
+    private static final int[] TriangleIndices = new int[Constants.Squares];
+    private static final int[] HalfIndices = new int[Constants.Squares];
+
+    static {
+        for (int i = 0; i < HalfSquares.length; i++)
+            HalfSquares[i] = (i / 4) * Constants.Columns + i % 4;
+        for (int square = 0; square < Constants.Squares; square++)
+            TriangleIndices[square] = HalfIndices[square] = -1;
+        for (int i = 0; i < TriangleSquares.length; i++)
+            TriangleIndices[TriangleSquares[i]] = i;
+        for (int i = 0; i < HalfSquares.length; i++)
+            HalfIndices[HalfSquares[i]] = i;
+    }
+
+    // Directory of the table files, null for tables only held in memory.
+    private final File directory;
+    private final ConcurrentHashMap<String, Table> tables = new ConcurrentHashMap<String, Table>();
+    // Keys without a file, so that the directory is only searched once per material set.
+    private final ConcurrentHashMap<String, Boolean> missing = new ConcurrentHashMap<String, Boolean>();
+
+    public Tablebase(File directory) { this.directory = directory; }
+
+    public File getDirectory() { return directory; }
+
+    // Table of a canonical key, mapped from its file on first use, null if there is none.
+    public Table getTable(String key) {
+        Table table = tables.get(key);
+        if (table != null || directory == null || missing.containsKey(key)) return table;
+        File file = new File(directory, key + Extension);
+        if (!file.isFile()) {
+            missing.put(key, true);
+            return null;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+            // The mapping stays valid once the channel is closed.
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt(0) != Magic || data.getInt(4) != Version) throw new IOException("Not a table file of this version.");
+            table = new Table(key, data, HeaderBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Unable to map %s: %s", file, e.getMessage()), e);
+        }
+        Table previous = tables.putIfAbsent(key, table);
+        return previous != null ? previous : table;
+    }
+
+    void addTable(Table table) {
+        tables.put(table.getKey(), table);
+        missing.remove(table.getKey());
+    }
+
+    // Called once the file of a key has been written, so that it gets mapped on next use.
+    void addFile(String key) { missing.remove(key); }
+
+    // Entry of a position, Missing for crazyhouse, castling or en-passant positions, more than MaxPieces pieces or a material set without table.
+    public int probe(Board board) {
+        if (board.isCrazyHouse() || board.hasCastlingRights() || board.hasEnPassantCapture()) return Missing;
+        PieceType[] types = new PieceType[MaxPieces];
+        Color[] colors = new Color[MaxPieces];
+        int[] squares = new int[MaxPieces];
+        int count = 0;
+        for (Color color : Color.values()) {
+            for (PieceType pieceType : PieceType.values()) {
+                for (long pieces = board.getPieceBitboard(color, pieceType); pieces != 0; pieces &= pieces - 1) {
+                    if (count == MaxPieces) return Missing;
+                    types[count] = pieceType;
+                    colors[count] = color;
+                    squares[count++] = Long.numberOfTrailingZeros(pieces);
+                }
+            }
+        }
+        Lookup lookup = lookup(types, colors, count);
+        return lookup != null ? lookup.probe(squares, board.getColorToPlay().ordinal(), new int[count]) : Missing;
+    }
+
+    // Result of a game reaching a position covered by the tables, Undecided otherwise.
+    // Wins too long to end before the move limit are draws, the fifty-move rule is not taken into account.
+    public GameResult getGameResult(Board board) {
+        int entry = probe(board);
+        if (entry == Missing || entry == Illegal) return GameResult.Undecided;
+        if (entry == 0 || board.getHalfMoves() + getDistanceToMate(entry) > Constants.MaxMovesPerGame * 2) return GameResult.TablebaseDraw;
+        Color winner = entry > 0 ? board.getColorToPlay() : board.getColorToPlay().opposite();
+        return winner == Color.White ? GameResult.WhiteWinsByTablebase : GameResult.BlackWinsByTablebase;
+    }
+
+    // Plies until mate of a winning or losing entry.
+    public static int getDistanceToMate(int entry) { return entry > 0 ? entry * 2 - 1 : -entry * 2 - 2; }
+    public static byte toWin(int plies) { return (byte)((plies + 1) / 2); }
+    public static byte toLoss(int plies) { return (byte)(-plies / 2 - 1); }
+
+    // Finds the table of a set of pieces, with the permutation of the pieces into the table order, null if there is none.
+    public Lookup lookup(PieceType[] types, Color[] colors, int count) {
+        String white = getSideKey(types, colors, count, Color.White), black = getSideKey(types, colors, count, Color.Black);
+        boolean swapped = !isCanonical(white, black);
+        Table table = getTable(swapped ? black + "v" + white : white + "v" + black);
+        if (table == null) return null;
+        int[] slots = new int[count];
+        boolean[] used = new boolean[count];
+        for (int slot = 0; slot < count; slot++) {
+            Color color = swapped ? table.colors[slot].opposite() : table.colors[slot];
+            for (int i = 0; i < count; i++) {
+                if (used[i] || types[i] != table.types[slot] || colors[i] != color) continue;
+                used[i] = true;
+                slots[slot] = i;
+                break;
+            }
+        }
+        return new Lookup(table, slots, swapped);
+    }
+
+    private static String getSideKey(PieceType[] types, Color[] colors, int count, Color color) {
+        StringBuilder key = new StringBuilder("K");
+        for (PieceType pieceType : KeyOrder) {
+            for (int i = 0; i < count; i++) {
+                if (types[i] == pieceType && colors[i] == color)
+                    key.append(pieceType.toChar());
+            }
+        }
+        return key.toString();
+    }
+
+    // Tables are stored with the stronger side as white.
+    private static boolean isCanonical(String white, String black) {
+        int whiteValue = getValue(white), blackValue = getValue(black);
+        if (whiteValue != blackValue) return whiteValue > blackValue;
+        return white.length() != black.length() ? white.length() > black.length() : white.compareTo(black) <= 0;
+    }
+
+    private static int getValue(String sideKey) {
+        int value = 0;
+        for (int i = 1; i < sideKey.length(); i++)
+            value += Constants.PieceValues[parsePieceType(sideKey.charAt(i)).ordinal()];
+        return value;
+    }
+
+    private static PieceType parsePieceType(char c) {
+        try {
+            return PieceType.fromChar(c);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(String.format("'%c' is not a piece.", c));
+        }
+    }
+
+    // Canonical form of a material key like KQvKR or KvKQ.
+    public static String getCanonicalKey(String key) {
+        int separator = key.indexOf('v');
+        if (separator < 0 || key.charAt(0) != 'K' || key.charAt(separator + 1) != 'K') throw new IllegalArgumentException(String.format("'%s' is not a material key.", key));
+        List<PieceType> types = new ArrayList<PieceType>();
+        List<Color> colors = new ArrayList<Color>();
+        for (int i = 0; i < key.length(); i++) {
+            if (i == separator) continue;
+            types.add(parsePieceType(key.charAt(i)));
+            colors.add(i < separator ? Color.White : Color.Black);
+        }
+        if (types.size() > MaxPieces) throw new IllegalArgumentException(String.format("'%s' has more than %d pieces.", key, MaxPieces));
+        PieceType[] typeArray = types.toArray(new PieceType[0]);
+        Color[] colorArray = colors.toArray(new Color[0]);
+        String white = getSideKey(typeArray, colorArray, typeArray.length, Color.White), black = getSideKey(typeArray, colorArray, typeArray.length, Color.Black);
+        return isCanonical(white, black) ? white + "v" + black : black + "v" + white;
+    }
+
+    // Table of a canonical material set and its position index.
+    // Pieces are ordered white king, black king, then the other white and black pieces in key order.
+    // The index is made of the color to play, the white king square after symmetries and the square of each other piece.
+    public static class Table {
+        private final String key;
+        final PieceType[] types;
+        final Color[] colors;
+        final boolean pawns;
+        private final int[] kingSquares;
+        private final int[] kingIndices;
+        private final int size;
+        private final ByteBuffer data;
+        private final int offset;
+
+        Table(String key, ByteBuffer data, int offset) {
+            this.key = key;
+            int separator = key.indexOf('v');
+            int count = key.length() - 1;
+            types = new PieceType[count];
+            colors = new Color[count];
+            types[0] = types[1] = PieceType.King;
+            colors[0] = Color.White;
+            colors[1] = Color.Black;
+            int slot = 2;
+            for (int i = 1; i < key.length(); i++) {
+                if (i == separator || i == separator + 1) continue;
+                types[slot] = parsePieceType(key.charAt(i));
+                colors[slot++] = i < separator ? Color.White : Color.Black;
+            }
+            pawns = key.indexOf('P') >= 0;
+            kingSquares = pawns ? HalfSquares : TriangleSquares;
+            kingIndices = pawns ? HalfIndices : TriangleIndices;
+            size = Constants.Colors * kingSquares.length << (6 * (count - 1));
+            this.data = data;
+            this.offset = offset;
+        }
+
+        public String getKey() { return key; }
+        public int getPieceCount() { return types.length; }
+        public int getSize() { return size; }
+        public byte get(int index) { return data.get(offset + index); }
+
+        // Symmetry bringing the white king to its reduced set of squares: bit 0 mirrors columns, bit 1 rows, bit 2 swaps both.
+        private int getSymmetry(int kingSquare) {
+            int symmetry = (kingSquare & 7) > 3 ? 1 : 0;
+            if (pawns) return symmetry;
+            if ((kingSquare >>> 3) > 3) symmetry |= 2;
+            int square = transform(kingSquare, symmetry);
+            return (square >>> 3) > (square & 7) ? symmetry | 4 : symmetry;
+        }
+
+        private static int transform(int square, int symmetry) {
+            int column = square & 7, row = square >>> 3;
+            if ((symmetry & 1) != 0) column = 7 - column;
+            if ((symmetry & 2) != 0) row = 7 - row;
+            return (symmetry & 4) != 0 ? column * Constants.Columns + row : row * Constants.Columns + column;
+        }
+
+        // Squares are given in table order, the color to play as an ordinal.
+        public int getIndex(int[] squares, int colorToPlay) {
+            int symmetry = getSymmetry(squares[0]);
+            int index = colorToPlay * kingSquares.length + kingIndices[transform(squares[0], symmetry)];
+            for (int slot = 1; slot < types.length; slot++)
+                index = (index << 6) | transform(squares[slot], symmetry);
+            return index;
+        }
+
+        // Fills the squares of a position in table order, returns the color to play as an ordinal.
+        public int decode(int index, int[] squares) {
+            for (int slot = types.length - 1; slot > 0; slot--) {
+                squares[slot] = index & 0x3F;
+                index >>>= 6;
+            }
+            squares[0] = kingSquares[index % kingSquares.length];
+            return index / kingSquares.length;
+        }
+    }
+
+    // Table found for a set of pieces, probing positions given in the order of that set.
+    public static class Lookup {
+        private final Table table;
+        // Index in the probed set of the piece of each table slot.
+        private final int[] slots;
+        // Whether the table has the colors of the probed set swapped, in which case rows are mirrored too.
+        private final boolean swapped;
+
+        Lookup(Table table, int[] slots, boolean swapped) {
+            this.table = table;
+            this.slots = slots;
+            this.swapped = swapped;
+        }
+
+        public Table getTable() { return table; }
+
+        // The scratch array receives the squares in table order.
+        public int probe(int[] squares, int colorToPlay, int[] scratch) {
+            int flip = swapped ? Constants.Squares - Constants.Columns : 0;
+            for (int slot = 0; slot < slots.length; slot++)
+                scratch[slot] = squares[slots[slot]] ^ flip;
+            return table.get(table.getIndex(scratch, swapped ? 1 - colorToPlay : colorToPlay));
+        }
+    }
+}
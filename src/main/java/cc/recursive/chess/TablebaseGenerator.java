@@ -0,0 +1,493 @@
+package cc.recursive.chess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Builds endgame tables by retrograde analysis, one pass per ply of distance to mate. https://www.chessprogramming.org/Retrograde_Analysis
+// Each pass marks the predecessors of the positions resolved by the previous pass, then evaluates the marked positions from their successors.
+// Both steps split the index in slices across threads, marks being the only writes made outside the slice of a thread.
+// Captures and promotions lead to smaller tables, which are generated first and whose values are final.
+// Positions are stored without en-passant rights, a double push allowing an en-passant reply is valued with that reply.
+public class TablebaseGenerator {
+    // Longest distance to mate an entry can hold.
+    private static final int MaxPasses = 253;
+    private static final int SlicesPerThread = 16;
+    private static final PieceType[] Promotions = { PieceType.Queen, PieceType.Rook, PieceType.Bishop, PieceType.Knight };
+
+    private final Tablebase tablebase;
+    private final ForkJoinPool pool;
+    private final int slices;
+
+    // Tables are written to the directory of the tablebase, or only kept in memory without one.
+    public TablebaseGenerator(Tablebase tablebase, int threads) {
+        this.tablebase = tablebase;
+        pool = new ForkJoinPool(threads);
+        slices = threads * SlicesPerThread;
+    }
+
+    public void shutdown() { pool.shutdown(); }
+
+    // Generates the table of a material set, after those reachable from it, skipping tables which already exist.
+    public void generate(String key) throws IOException {
+        key = Tablebase.getCanonicalKey(key);
+        if (tablebase.getTable(key) != null) return;
+        for (String subKey : getSubKeys(key))
+            generate(subKey);
+
+        long start = System.nanoTime();
+        Builder builder = new Builder(key);
+        int passes = builder.build();
+        byte[] values = builder.values;
+        File directory = tablebase.getDirectory();
+        if (directory != null) {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, key + Tablebase.Extension)), 1 << 16))) {
+                output.writeInt(Tablebase.Magic);
+                output.writeInt(Tablebase.Version);
+                output.write(values);
+            }
+            tablebase.addFile(key);
+        } else
+            tablebase.addTable(new Tablebase.Table(key, ByteBuffer.wrap(values), 0));
+
+        long wins = 0, losses = 0, draws = 0;
+        int longest = 0;
+        for (byte value : values) {
+            if (value == Tablebase.Illegal) continue;
+            if (value > 0) wins++;
+            else if (value < 0) losses++;
+            else draws++;
+            if (value != 0) longest = Math.max(longest, Tablebase.getDistanceToMate(value));
+        }
+        System.out.println(String.format("%s: %d positions, %d wins, %d draws, %d losses, longest mate %d plies, %d passes in %.1fs",
+            key, values.length, wins, draws, losses, longest, passes, (System.nanoTime() - start) / 1e9));
+    }
+
+    // Material sets reached by a capture or a promotion.
+    private static List<String> getSubKeys(String key) {
+        int separator = key.indexOf('v');
+        String white = key.substring(1, separator), black = key.substring(separator + 2);
+        Set<String> keys = new LinkedHashSet<String>();
+        for (int i = 0; i < white.length(); i++) {
+            String rest = white.substring(0, i) + white.substring(i + 1);
+            keys.add(Tablebase.getCanonicalKey("K" + rest + "vK" + black));
+            if (white.charAt(i) == 'P') {
+                for (PieceType promotion : Promotions)
+                    keys.add(Tablebase.getCanonicalKey("K" + rest + promotion.toChar() + "vK" + black));
+            }
+        }
+        for (int i = 0; i < black.length(); i++) {
+            String rest = black.substring(0, i) + black.substring(i + 1);
+            keys.add(Tablebase.getCanonicalKey("K" + white + "vK" + rest));
+            if (black.charAt(i) == 'P') {
+                for (PieceType promotion : Promotions)
+                    keys.add(Tablebase.getCanonicalKey("K" + white + "vK" + rest + promotion.toChar()));
+            }
+        }
+        return new ArrayList<String>(keys);
+    }
+
+    // Every material set with up to the given number of pieces, kings included.
+    public static List<String> getAllKeys(int maxPieces) {
+        String pieces = "QRBNPqrbnp";
+        Set<String> keys = new LinkedHashSet<String>();
+        keys.add("KvK");
+        addKeys(keys, pieces, "", "", 0, maxPieces - 2);
+        return new ArrayList<String>(keys);
+    }
+
+    private static void addKeys(Set<String> keys, String pieces, String white, String black, int first, int remaining) {
+        if (remaining == 0) return;
+        for (int i = first; i < pieces.length(); i++) {
+            char c = pieces.charAt(i);
+            String nextWhite = Character.isUpperCase(c) ? white + c : white, nextBlack = Character.isLowerCase(c) ? black + Character.toUpperCase(c) : black;
+            keys.add(Tablebase.getCanonicalKey("K" + nextWhite + "vK" + nextBlack));
+            addKeys(keys, pieces, nextWhite, nextBlack, i, remaining - 1);
+        }
+    }
+
+    // Runs a task on every slice of the index, returns the sum of their results.
+    private long forEachSlice(int size, SliceTask task) {
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(slices);
+        int sliceSize = (size + slices - 1) / slices;
+        for (int start = 0; start < size; start += sliceSize) {
+            int sliceStart = start, sliceEnd = Math.min(size, start + sliceSize);
+            tasks.add(() -> task.run(sliceStart, sliceEnd));
+        }
+        long result = 0;
+        try {
+            for (Future<Long> future : pool.invokeAll(tasks))
+                result += future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return result;
+    }
+
+    private interface SliceTask {
+        long run(int start, int end);
+    }
+
+    // State of the table being built.
+    private class Builder {
+        private final Tablebase.Table table;
+        private final PieceType[] types;
+        private final Color[] colors;
+        private final int count;
+        private final byte[] values;
+        // Positions with a successor resolved by the previous pass.
+        private final byte[] marks;
+        // Pass at which a position must be evaluated again because of a capture or promotion, 0 when none.
+        private final byte[] dues;
+        // Table of the pieces after a move changing the material, indexed by moving slot, resulting piece type and captured slot or count when none.
+        private final Tablebase.Lookup[][][] exits;
+        private final AtomicInteger lastDue = new AtomicInteger();
+
+        Builder(String key) {
+            table = new Tablebase.Table(key, null, 0);
+            types = table.types;
+            colors = table.colors;
+            count = types.length;
+            values = new byte[table.getSize()];
+            marks = new byte[values.length];
+            dues = new byte[values.length];
+            exits = new Tablebase.Lookup[count][Constants.PieceTypes][count + 1];
+            for (int slot = 0; slot < count; slot++) {
+                for (int captured = 0; captured <= count; captured++) {
+                    if (captured == slot || (captured < count && (colors[captured] == colors[slot] || types[captured] == PieceType.King))) continue;
+                    if (captured < count)
+                        exits[slot][types[slot].ordinal()][captured] = getExit(slot, types[slot], captured);
+                    if (types[slot] == PieceType.Pawn) {
+                        for (PieceType promotion : Promotions)
+                            exits[slot][promotion.ordinal()][captured] = getExit(slot, promotion, captured);
+                    }
+                }
+            }
+        }
+
+        private Tablebase.Lookup getExit(int slot, PieceType pieceType, int captured) {
+            PieceType[] exitTypes = new PieceType[count];
+            Color[] exitColors = new Color[count];
+            int exitCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == captured) continue;
+                exitTypes[exitCount] = i == slot ? pieceType : types[i];
+                exitColors[exitCount++] = colors[i];
+            }
+            Tablebase.Lookup lookup = tablebase.lookup(exitTypes, exitColors, exitCount);
+            if (lookup == null) throw new IllegalStateException(String.format("Table reached from %s is missing.", table.getKey()));
+            return lookup;
+        }
+
+        // Returns the number of passes made.
+        int build() {
+            forEachSlice(values.length, (start, end) -> {
+                Scratch scratch = new Scratch();
+                for (int index = start; index < end; index++)
+                    values[index] = isLegal(index, scratch) ? evaluate(index, 0, scratch) : Tablebase.Illegal;
+                return 0L;
+            });
+
+            int pass = 1;
+            for (; pass <= MaxPasses; pass++) {
+                int frontier = pass - 1;
+                forEachSlice(values.length, (start, end) -> {
+                    Scratch scratch = new Scratch();
+                    for (int index = start; index < end; index++) {
+                        byte value = values[index];
+                        if (value != 0 && value != Tablebase.Illegal && Tablebase.getDistanceToMate(value) == frontier)
+                            markPredecessors(index, scratch);
+                    }
+                    return 0L;
+                });
+                int current = pass;
+                long resolved = forEachSlice(values.length, (start, end) -> {
+                    Scratch scratch = new Scratch();
+                    long result = 0;
+                    for (int index = start; index < end; index++) {
+                        if (marks[index] == 0 && (dues[index] & 0xFF) != current) continue;
+                        marks[index] = 0;
+                        if ((dues[index] & 0xFF) == current) dues[index] = 0;
+                        if (values[index] != 0) continue;
+                        values[index] = evaluate(index, current, scratch);
+                        if (values[index] != 0) result++;
+                    }
+                    return result;
+                });
+                if (resolved == 0 && lastDue.get() <= pass) break;
+            }
+            return pass;
+        }
+
+        private boolean isLegal(int index, Scratch scratch) {
+            int[] squares = scratch.squares;
+            int colorToPlay = table.decode(index, squares);
+            long occupied = 0;
+            for (int slot = 0; slot < count; slot++) {
+                long bit = 1L << squares[slot];
+                if ((occupied & bit) != 0) return false;
+                occupied |= bit;
+                int row = squares[slot] >>> 3;
+                if (types[slot] == PieceType.Pawn && (row == 0 || row == Constants.Rows - 1)) return false;
+            }
+            // The side which has just moved cannot be in check, slots 0 and 1 hold the white and black kings.
+            return !isAttacked(squares[1 - colorToPlay], colorToPlay, occupied, squares, count);
+        }
+
+        // Value of a position from the moves whose successors are resolved before the given pass, 0 while it stays unknown.
+        // Successors resolved later are known after a capture or promotion only, the pass at which they decide is then recorded as due.
+        private byte evaluate(int index, int pass, Scratch scratch) {
+            int[] squares = scratch.squares, moved = scratch.moved;
+            int colorToPlay = table.decode(index, squares);
+            int opponent = 1 - colorToPlay;
+            long occupied = 0, own = 0;
+            for (int slot = 0; slot < count; slot++) {
+                occupied |= 1L << squares[slot];
+                if (colors[slot].ordinal() == colorToPlay) own |= 1L << squares[slot];
+            }
+
+            boolean anyMove = false, canLose = true;
+            int shortestWin = Integer.MAX_VALUE, longestLoss = 0;
+            for (int slot = 0; slot < count; slot++) {
+                if (colors[slot].ordinal() != colorToPlay) continue;
+                int from = squares[slot];
+                for (long targets = getTargets(slot, from, colorToPlay, occupied, own); targets != 0; targets &= targets - 1) {
+                    int to = Long.numberOfTrailingZeros(targets);
+                    int captured = findSlot(squares, to);
+                    long movedOccupied = (occupied & ~(1L << from)) | (1L << to);
+                    System.arraycopy(squares, 0, moved, 0, count);
+                    moved[slot] = to;
+                    if (isAttacked(moved[colorToPlay], opponent, movedOccupied, moved, captured)) continue;
+                    anyMove = true;
+
+                    boolean promotion = types[slot] == PieceType.Pawn && (to >>> 3 == 0 || to >>> 3 == Constants.Rows - 1);
+                    for (int i = 0; i < (promotion ? Promotions.length : 1); i++) {
+                        int entry;
+                        if (promotion || captured < count)
+                            entry = probeExit(exits[slot][(promotion ? Promotions[i] : types[slot]).ordinal()][captured], moved, captured, opponent, scratch);
+                        else {
+                            entry = values[table.getIndex(moved, opponent)];
+                            // Successors resolved by this pass do not count yet.
+                            if (entry != 0 && Tablebase.getDistanceToMate(entry) >= pass) entry = 0;
+                            if (types[slot] == PieceType.Pawn && Math.abs(to - from) == 2 * Constants.Columns)
+                                entry = addEnPassant(entry, slot, from, to, movedOccupied, colorToPlay, scratch);
+                        }
+                        if (entry == 0) canLose = false;
+                        else if (entry < 0) shortestWin = Math.min(shortestWin, Tablebase.getDistanceToMate(entry) + 1);
+                        else longestLoss = Math.max(longestLoss, Tablebase.getDistanceToMate(entry) + 1);
+                    }
+                }
+            }
+
+            if (!anyMove)
+                return pass == 0 && isAttacked(squares[colorToPlay], opponent, occupied, squares, count) ? Tablebase.toLoss(0) : 0;
+            if (shortestWin != Integer.MAX_VALUE) {
+                if (shortestWin <= pass) return Tablebase.toWin(shortestWin);
+                setDue(index, shortestWin);
+            } else if (canLose) {
+                if (longestLoss <= pass) return Tablebase.toLoss(longestLoss);
+                setDue(index, longestLoss);
+            }
+            return 0;
+        }
+
+        // Entry of the successor of a double push, given the entry of the same position without en-passant right,
+        // once the en-passant replies are taken into account. Their values are final, the other moves are only known when the entry is.
+        private int addEnPassant(int entry, int slot, int from, int to, long occupied, int colorToPlay, Scratch scratch) {
+            int[] moved = scratch.moved, reply = scratch.reply;
+            int opponent = 1 - colorToPlay, target = (from + to) / 2;
+            // Best reply for the opponent: shortest win, else draw, else longest loss, in plies from the successor.
+            int shortestWin = Integer.MAX_VALUE, longestLoss = -1;
+            boolean draw = false;
+            for (int capturer = 0; capturer < count; capturer++) {
+                int square = moved[capturer];
+                if (colors[capturer].ordinal() != opponent || types[capturer] != PieceType.Pawn || square >>> 3 != to >>> 3 || Math.abs((square & 7) - (to & 7)) != 1) continue;
+                System.arraycopy(moved, 0, reply, 0, count);
+                reply[capturer] = target;
+                long replyOccupied = (occupied & ~(1L << to) & ~(1L << square)) | (1L << target);
+                if (isAttacked(reply[opponent], colorToPlay, replyOccupied, reply, slot)) continue;
+                int result = probeExit(exits[capturer][PieceType.Pawn.ordinal()][slot], reply, slot, colorToPlay, scratch);
+                if (result == 0) draw = true;
+                else if (result < 0) shortestWin = Math.min(shortestWin, Tablebase.getDistanceToMate(result) + 1);
+                else longestLoss = Math.max(longestLoss, Tablebase.getDistanceToMate(result) + 1);
+            }
+            if (shortestWin == Integer.MAX_VALUE && !draw && longestLoss < 0) return entry;
+
+            // Without other moves, the position stored is a stalemate or a mate and only en passant counts.
+            if (!hasMove(moved, opponent, occupied, reply)) entry = Tablebase.Illegal;
+            boolean known = entry != 0 && entry != Tablebase.Illegal;
+            if (shortestWin != Integer.MAX_VALUE)
+                return known && entry > 0 ? Tablebase.toWin(Math.min(shortestWin, Tablebase.getDistanceToMate(entry))) : Tablebase.toWin(shortestWin);
+            if (known && entry > 0) return entry;
+            if (draw) return 0;
+            if (entry == Tablebase.Illegal) return Tablebase.toLoss(longestLoss);
+            return known ? Tablebase.toLoss(Math.max(longestLoss, Tablebase.getDistanceToMate(entry))) : 0;
+        }
+
+        // Whether the side to play has a legal move, en passant aside.
+        private boolean hasMove(int[] squares, int colorToPlay, long occupied, int[] moved) {
+            long own = 0;
+            for (int slot = 0; slot < count; slot++) {
+                if (colors[slot].ordinal() == colorToPlay) own |= 1L << squares[slot];
+            }
+            for (int slot = 0; slot < count; slot++) {
+                if (colors[slot].ordinal() != colorToPlay) continue;
+                int from = squares[slot];
+                for (long targets = getTargets(slot, from, colorToPlay, occupied, own); targets != 0; targets &= targets - 1) {
+                    int to = Long.numberOfTrailingZeros(targets);
+                    System.arraycopy(squares, 0, moved, 0, count);
+                    moved[slot] = to;
+                    if (!isAttacked(moved[colorToPlay], 1 - colorToPlay, (occupied & ~(1L << from)) | (1L << to), moved, findSlot(squares, to))) return true;
+                }
+            }
+            return false;
+        }
+
+        private void setDue(int index, int pass) {
+            if (pass > MaxPasses) return;
+            int due = dues[index] & 0xFF;
+            if (due == 0 || pass < due) dues[index] = (byte)pass;
+            lastDue.accumulateAndGet(pass, Math::max);
+        }
+
+        private int probeExit(Tablebase.Lookup exit, int[] moved, int captured, int colorToPlay, Scratch scratch) {
+            int[] exitSquares = scratch.exitSquares;
+            int exitCount = 0;
+            for (int slot = 0; slot < count; slot++) {
+                if (slot != captured) exitSquares[exitCount++] = moved[slot];
+            }
+            return exit.probe(exitSquares, colorToPlay, scratch.probe);
+        }
+
+        // Marks the positions from which a move leads to the given one without capture or promotion.
+        private void markPredecessors(int index, Scratch scratch) {
+            int[] squares = scratch.squares, moved = scratch.moved;
+            int mover = 1 - table.decode(index, squares);
+            long occupied = 0;
+            for (int slot = 0; slot < count; slot++)
+                occupied |= 1L << squares[slot];
+
+            for (int slot = 0; slot < count; slot++) {
+                if (colors[slot].ordinal() != mover) continue;
+                int to = squares[slot];
+                long origins;
+                if (types[slot] == PieceType.Pawn) {
+                    int forward = mover == 0 ? Constants.Columns : -Constants.Columns;
+                    int single = to - forward, row = single >>> 3;
+                    origins = 0;
+                    if (row > 0 && row < Constants.Rows - 1 && (occupied & (1L << single)) == 0) {
+                        origins |= 1L << single;
+                        int twoRow = mover == 0 ? 3 : 4;
+                        if (to >>> 3 == twoRow && (occupied & (1L << (single - forward))) == 0)
+                            origins |= 1L << (single - forward);
+                    }
+                } else
+                    origins = getAttacks(types[slot], to, mover, occupied) & ~occupied;
+                for (; origins != 0; origins &= origins - 1) {
+                    System.arraycopy(squares, 0, moved, 0, count);
+                    moved[slot] = Long.numberOfTrailingZeros(origins);
+                    marks[table.getIndex(moved, mover)] = 1;
+                    // Without pawns, a white king on the diagonal leaves a position and its transposition with distinct indices.
+                    if (!table.pawns) {
+                        for (int i = 0; i < count; i++)
+                            moved[i] = (moved[i] & 7) * Constants.Columns + (moved[i] >>> 3);
+                        marks[table.getIndex(moved, mover)] = 1;
+                    }
+                }
+            }
+        }
+
+        private long getTargets(int slot, int from, int colorToPlay, long occupied, long own) {
+            if (types[slot] != PieceType.Pawn)
+                return getAttacks(types[slot], from, colorToPlay, occupied) & ~own;
+            int forward = colorToPlay == 0 ? Constants.Columns : -Constants.Columns;
+            long targets = Bitboards.PawnAttacks[colorToPlay][from] & occupied & ~own;
+            int single = from + forward;
+            if ((occupied & (1L << single)) == 0) {
+                targets |= 1L << single;
+                int startRow = colorToPlay == 0 ? 1 : Constants.Rows - 2;
+                if (from >>> 3 == startRow && (occupied & (1L << (single + forward))) == 0)
+                    targets |= 1L << (single + forward);
+            }
+            return targets;
+        }
+
+        private long getAttacks(PieceType pieceType, int square, int color, long occupied) {
+            switch (pieceType) {
+                case Pawn: return Bitboards.PawnAttacks[color][square];
+                case Knight: return Bitboards.KnightAttacks[square];
+                case Bishop: return Bitboards.bishopAttacks(square, occupied);
+                case Rook: return Bitboards.rookAttacks(square, occupied);
+                case Queen: return Bitboards.queenAttacks(square, occupied);
+                default: return Bitboards.KingAttacks[square];
+            }
+        }
+
+        // Whether pieces of a color attack a square, ignoring the captured slot.
+        private boolean isAttacked(int square, int byColor, long occupied, int[] squares, int captured) {
+            for (int slot = 0; slot < count; slot++) {
+                if (slot == captured || colors[slot].ordinal() != byColor) continue;
+                if ((getAttacks(types[slot], squares[slot], byColor, occupied) & (1L << square)) != 0) return true;
+            }
+            return false;
+        }
+
+        private int findSlot(int[] squares, int square) {
+            for (int slot = 0; slot < count; slot++) {
+                if (squares[slot] == square) return slot;
+            }
+            return count;
+        }
+
+        private class Scratch {
+            final int[] squares = new int[count];
+            final int[] moved = new int[count];
+            final int[] reply = new int[count];
+            final int[] exitSquares = new int[count];
+            final int[] probe = new int[count];
+        }
+    }
+
+    // Usage: TablebaseGenerator [-threads N] directory [key...]
+    // Without keys, generates every material set with up to Tablebase.MaxPieces pieces.
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String directory = null;
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (directory == null)
+                directory = args[i];
+            else
+                keys.add(args[i]);
+        }
+        if (directory == null) {
+            System.err.println("Usage: TablebaseGenerator [-threads N] directory [key...]");
+            System.exit(1);
+        }
+        new File(directory).mkdirs();
+        if (keys.isEmpty())
+            keys = getAllKeys(Tablebase.MaxPieces);
+
+        TablebaseGenerator generator = new TablebaseGenerator(new Tablebase(new File(directory)), threads);
+        for (String key : keys)
+            generator.generate(key);
+        generator.shutdown();
+    }
+}
@@ -0,0 +1,25 @@
+package cc.recursive.chess;
+
+// State needed by Board.unmakeMove to take back a move, records are reused so making moves does not allocate.
+class UndoRecord {
+    // Packed move that was made.
+    int move;
+    // Piece that moved, null for drops.
+    Piece movedPiece;
+    // Piece on the destination square before the move, which is the own rook for castling.
+    Piece toPiece;
+    // Pawn captured en-passant and its square, -1 when none.
+    Piece enPassantPiece;
+    int enPassantCapture;
+    // Castling rights, en-passant square, half-move clock and hash before the move.
+    int castlingRights;
+    int enPassantSquare;
+    int halfMoveClock;
+    long hash;
+    // Reserve entry changed by the move for the side that played it, null when none.
+    PieceType reservePieceType;
+    int reserveDelta;
+    // Legal moves cache of the position before the move while it is made, spare list otherwise.
+    MoveList legalMoves;
+    boolean legalMovesValid;
+}
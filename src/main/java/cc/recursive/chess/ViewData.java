@@ -1,14 +1,14 @@
 package cc.recursive.chess;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 public class ViewData {
     private int game;
     private int[] scores = new int[2];
     private String result;
     private String fen;
-    private List<String> highlights;
+    // Replaces the FEN in frames compacted by ViewEncoder.
+    private String delta;
+    // Square names of the last move, concatenated.
+    private String highlights;
     private String move;
     private String status;
     private String comment;
@@ -28,9 +28,18 @@ public class ViewData {
     public String getFen() { return fen; }
     public void setBoard(Board board) { fen = board.toFenString(false); }
 
-    public List<String> getHighlights() { return highlights; }
+    public String getDelta() { return delta; }
+    public void setDelta(String delta) {
+        this.delta = delta;
+        fen = null;
+    }
+
+    public String getHighlights() { return highlights; }
     public void setHighlights(Board board) {
-        this.highlights = board.getHighlightSquares().stream().map(square -> square.toString()).collect(Collectors.toList());
+        StringBuilder builder = new StringBuilder(4);
+        for (Square square : board.getHighlightSquares())
+            builder.append(Square.columnToChar(square.getColumn())).append(Square.rowToChar(square.getRow()));
+        highlights = builder.toString();
     }
 
     public String getMove() { return move; }
@@ -40,6 +49,9 @@ public class ViewData {
     public void setMove(Board board, Move move) {
         this.move = board.getAlgebraicMoveUnsafe(move);
     }
+    public void setMove(Board board, int move) {
+        this.move = board.getAlgebraicMoveUnsafe(move);
+    }
 
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
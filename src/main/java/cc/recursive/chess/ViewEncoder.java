@@ -0,0 +1,65 @@
+package cc.recursive.chess;
+
+// Compacts the frames sent to the viewer, which are otherwise a full FEN each.
+// The first frame of a game and every KeyframeInterval frames keep the FEN, others send a delta from the previous frame:
+// the squares which changed, each as its name followed by its piece or '.' when empty, a '~' marking promoted pieces,
+// then '/' and the reserve in crazyhouse when it changed, then a space and the FEN fields after the board.
+// ChessViewerModule.js rebuilds the FEN of each frame from the previous one.
+public class ViewEncoder {
+    public static final int KeyframeInterval = 32;
+
+    private static final int Promoted = 1 << 16;
+
+    // Piece character of each square of the last frame with the Promoted flag, rows in FEN order, 0 when empty.
+    private int[] squares = new int[Constants.Squares];
+    private int[] nextSquares = new int[Constants.Squares];
+    private String reserve = null;
+    private int game = -1;
+    private int framesSinceKeyframe = 0;
+    private final StringBuilder delta = new StringBuilder();
+
+    // Replaces the FEN of the frame by a delta unless it is a keyframe.
+    public void encode(ViewData viewData) {
+        String fen = viewData.getFen();
+        int index = 0, position = 0;
+        for (; index < Constants.Squares; position++) {
+            char c = fen.charAt(position);
+            if (c == '/') continue;
+            if (c >= '1' && c <= '8') {
+                for (int i = c - '0'; i > 0; i--)
+                    nextSquares[index++] = 0;
+            } else if (fen.charAt(position + 1) == '~') {
+                nextSquares[index++] = c | Promoted;
+                position++;
+            } else
+                nextSquares[index++] = c;
+        }
+        int fieldsStart = fen.indexOf(' ', position);
+        // In crazyhouse, the reserve follows the board as an extra row.
+        String nextReserve = fen.charAt(position) == '/' ? fen.substring(position + 1, fieldsStart) : null;
+
+        boolean keyframe = viewData.getGame() != game || ++framesSinceKeyframe == KeyframeInterval;
+        if (keyframe) {
+            game = viewData.getGame();
+            framesSinceKeyframe = 0;
+        } else {
+            delta.setLength(0);
+            for (int square = 0; square < Constants.Squares; square++) {
+                int piece = nextSquares[square];
+                if (piece == squares[square]) continue;
+                delta.append(Square.columnToChar(square % Constants.Columns)).append(Square.rowToChar(Constants.Rows - 1 - square / Constants.Columns));
+                delta.append(piece != 0 ? (char)piece : '.');
+                if ((piece & Promoted) != 0) delta.append('~');
+            }
+            if (nextReserve != null && !nextReserve.equals(reserve))
+                delta.append('/').append(nextReserve);
+            delta.append(fen, fieldsStart, fen.length());
+            viewData.setDelta(delta.toString());
+        }
+
+        int[] swap = squares;
+        squares = nextSquares;
+        nextSquares = swap;
+        reserve = nextReserve;
+    }
+}
@@ -0,0 +1,36 @@
+package cc.recursive.chess;
+
+import java.util.Random;
+
+// Random keys combined with xor to hash positions. https://en.wikipedia.org/wiki/Zobrist_hashing
+public class Zobrist {
+    // Keys for each color, piece type, promoted flag and square.
+    public static final long[][][][] Pieces = new long[Constants.Colors][Constants.PieceTypes][2][Constants.Squares];
+    // Keys for each color and castling rook column.
+    public static final long[][] Castlings = new long[Constants.Colors][Constants.Columns];
+    // Keys for the column of an en-passant square.
+    public static final long[] EnPassantColumns = new long[Constants.Columns];
+    // Keys for each color, piece type and reserve count, zero for an empty reserve.
+    public static final long[][][] Reserves = new long[Constants.Colors][Constants.PieceTypes][Constants.Squares + 1];
+    public static final long BlackToPlay;
+
+    static {
+        // Fixed seed so that hashes are identical on every run.
+        Random rng = new Random(0x2B0B51L);
+        for (int color = 0; color < Constants.Colors; color++) {
+            for (int pieceType = 0; pieceType < Constants.PieceTypes; pieceType++) {
+                for (int promoted = 0; promoted < 2; promoted++) {
+                    for (int square = 0; square < Constants.Squares; square++)
+                        Pieces[color][pieceType][promoted][square] = rng.nextLong();
+                }
+                for (int count = 1; count <= Constants.Squares; count++)
+                    Reserves[color][pieceType][count] = rng.nextLong();
+            }
+            for (int column = 0; column < Constants.Columns; column++)
+                Castlings[color][column] = rng.nextLong();
+        }
+        for (int column = 0; column < Constants.Columns; column++)
+            EnPassantColumns[column] = rng.nextLong();
+        BlackToPlay = rng.nextLong();
+    }
+}
@@ -1,6 +1,8 @@
 package com.codingame.game;
 import com.codingame.gameengine.core.AbstractMultiplayerPlayer;
 
+import cc.recursive.chess.Protocol;
+
 public class Player extends AbstractMultiplayerPlayer {
     private String[] inputVariables;
 
@@ -11,6 +13,6 @@ public class Player extends AbstractMultiplayerPlayer {
 
     public String[] getInputVariables() { return inputVariables; }
     public void setInputVariables(String configuration) {
-        this.inputVariables = configuration.split(" ");
+        this.inputVariables = Protocol.parseInputVariables(configuration);
     }
 }
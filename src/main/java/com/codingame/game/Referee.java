@@ -1,7 +1,6 @@
 package com.codingame.game;
 
 import java.text.ParseException;
-import java.util.List;
 import java.util.Random;
 
 import com.codingame.gameengine.core.AbstractPlayer.TimeoutException;
@@ -17,7 +16,11 @@ import cc.recursive.chess.Game;
 import cc.recursive.chess.GameException;
 import cc.recursive.chess.GameResult;
 import cc.recursive.chess.Move;
+import cc.recursive.chess.PhaseTimings;
+import cc.recursive.chess.PhaseTimings.Phase;
+import cc.recursive.chess.Protocol;
 import cc.recursive.chess.ViewData;
+import cc.recursive.chess.ViewEncoder;
 import cc.recursive.chess.ViewGlobalData;
 
 public class Referee extends AbstractReferee {
@@ -34,6 +37,10 @@ public class Referee extends AbstractReferee {
     private Random rng = new Random();
     // Whether crazyhouse rules are enabled.
     private boolean crazyHouse = false;
+    // Time spent in each phase of the turns, only measured when enabled with a system property.
+    private PhaseTimings timings = new PhaseTimings();
+    // Turns the frames sent to the viewer into keyframes and deltas.
+    private final ViewEncoder viewEncoder = new ViewEncoder();
 
     @Override
     public void init() {
@@ -52,9 +59,8 @@ public class Referee extends AbstractReferee {
         // First turn is held outside the game and used for configuration purposes.
         if (turn <= 2) {
             Player player = gameManager.getPlayer(turn - 1);
-            player.sendInputLine("2");
-            player.sendInputLine(String.format("crazyHouse %d", crazyHouse ? 1 : 0));
-            player.sendInputLine(String.format("maxMoves %d", Constants.MaxMovesPerGame));
+            for (String line : Protocol.getConfigurationLines(crazyHouse))
+                player.sendInputLine(line);
             player.execute();
             try {
                 String inputConfiguration = player.getOutputs().get(0);
@@ -74,73 +80,44 @@ public class Referee extends AbstractReferee {
             return;
         }
 
+        timings.start();
         Board board = game.getBoard();
         Player currPlayer = getPlayerFromColor(board.getColorToPlay());
 
         // Produce input according to player's configuration.
-        for (String variable : currPlayer.getInputVariables()) {
-            if (variable.equals("fen"))
-                currPlayer.sendInputLine(board.toFenString(false));
-            else if (variable.equals("moves")) {
-                List<Move> moves = board.generateMoves();
-                currPlayer.sendInputLine(Integer.toString(moves.size()));
-                for (Move move : moves)
-                    currPlayer.sendInputLine(move.toString());
-            } else if (variable.equals("lastmove"))
-                currPlayer.sendInputLine(lastMove != null ? lastMove.toString() : "none");
-            else if (variable.equals("draw"))
-                currPlayer.sendInputLine(drawOffered ? "1" : "0");
-            else if (variable.equals("game"))
-                currPlayer.sendInputLine(Integer.toString(gameCount + 1));
-            else if (variable.equals("score"))
-                currPlayer.sendInputLine(String.format("%d %d", currPlayer.getScore(), getPlayerFromColor(board.getColorToPlay().opposite()).getScore()));
-        }
+        int opponentScore = getPlayerFromColor(board.getColorToPlay().opposite()).getScore();
+        for (String line : Protocol.getInputLines(currPlayer.getInputVariables(), board, lastMove, drawOffered, gameCount + 1, currPlayer.getScore(), opponentScore))
+            currPlayer.sendInputLine(line);
+        timings.lap(Phase.Input);
         currPlayer.execute();
+        timings.lap(Phase.Execute);
 
         ViewData viewData = null;
         String status = null;
         String comment = null;
         try {
-            String output = currPlayer.getOutputs().get(0);
-
-            // Split comment from output.
-            int spaceIndex = output.indexOf(' ');
-            if (spaceIndex != -1) {
-                comment = output.substring(spaceIndex + 1);
-                if (comment.length() > Constants.MaxCommentLength)
-                    comment = comment.substring(0, Constants.MaxCommentLength);
-                output = output.substring(0, spaceIndex);
-            }
-
-            if (output.length() == 0)
-                throw new ParseException("Player output is missing!", 0);
+            Protocol.Output output = Protocol.parseOutput(currPlayer.getOutputs().get(0));
+            comment = output.getComment();
+            timings.lap(Phase.Output);
 
             // Check if a draw offer was accepted.
-            if (drawOffered && output.equals("draw")) {
+            if (drawOffered && output.isDrawAcceptance()) {
                 game.setGameResult(GameResult.DrawByAgreement);
                 viewData = game.getViewData();
             // Check if the game was resigned.
-            } else if (output.equals("resign")) {
+            } else if (output.isResignation()) {
                 game.setGameResult(board.getColorToPlay() == Color.White ? GameResult.WhiteResigns : GameResult.BlackResigns);
                 viewData = game.getViewData();
             } else {
-                drawOffered = false;
+                Move move = output.getMove(board, rng);
+                timings.lap(Phase.Output);
                 // Check if a draw has been offered.
-                if (output.charAt(output.length() - 1) == '=') {
-                    drawOffered = true;
-                    output = output.substring(0, output.length() - 1);
-                }
-                Move move;
-                if (output.equals("random")) {
-                    List<Move> moves = board.generateMoves();
-                    move = moves.get(rng.nextInt(moves.size()));
-                }
-                else
-                    move = new Move(output);
+                drawOffered = output.isDrawOffer();
                 lastMove = move;
                 viewData = game.applyMove(move);
             }
 
+            timings.lap(Phase.ApplyMove);
             GameResult result = game.getGameResult();
             // Handle endgame result.
             if (result != GameResult.Undecided) {
@@ -194,6 +171,7 @@ public class Referee extends AbstractReferee {
                 if (drawOffered)
                     status = "A draw was offered.";
             }
+            timings.lap(Phase.Result);
         } catch (ParseException e) {
             handlePlayerError(currPlayer, e.getMessage());
         } catch (GameException e) {
@@ -207,6 +185,13 @@ public class Referee extends AbstractReferee {
         viewData.setStatus(status);
         viewData.setComment(comment);
         setViewData(viewData);
+        timings.lap(Phase.View);
+        timings.endTurn();
+    }
+
+    @Override
+    public void onEnd() {
+        timings.report();
     }
 
     private Player getPlayerFromColor(Color color) {
@@ -215,6 +200,8 @@ public class Referee extends AbstractReferee {
 
     private void newGame() {
         game = new Game(gameManager.getSeed(), crazyHouse);
+        if (PhaseTimings.Enabled)
+            game.setTimings(timings);
         setViewData(game.getViewData());
         lastMove = null;
         drawOffered = false;
@@ -230,6 +217,7 @@ public class Referee extends AbstractReferee {
     private void setViewData(ViewData viewData) {
         viewData.setGame(gameCount);
         viewData.setScores(gameManager.getPlayer(0).getScore(), gameManager.getPlayer(1).getScore());
+        viewEncoder.encode(viewData);
         gameManager.setViewData("chess", viewData);
     }
 }
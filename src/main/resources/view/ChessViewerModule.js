@@ -13,6 +13,9 @@ export class ChessViewerModule {
 
     handleFrameData (frameInfo, frameData) {
         frameData.frame = frameInfo.number;
+        // Frames between keyframes only hold the changes from the previous frame.
+        if (frameData.fen === undefined)
+            frameData.fen = this.decodeDelta(this.frames[this.frames.length - 1].fen, frameData.delta);
         var parts = frameData.fen.split(' ');
 
         // Read FEN board and store pieces.
@@ -72,10 +75,9 @@ export class ChessViewerModule {
         // Update highlighted squares to display current move.
         var highlights = frameData.highlights;
         frameData.highlights = [];
-        if (highlights) for (var squareStr of highlights) {
-            if (squareStr.length != 2) continue;
-            var column = squareStr.charCodeAt(0) - 'a'.charCodeAt(0);
-            var row = squareStr.charCodeAt(1) - '1'.charCodeAt(0);
+        if (highlights) for (var i = 0; i + 1 < highlights.length; i += 2) {
+            var column = highlights.charCodeAt(i) - 'a'.charCodeAt(0);
+            var row = highlights.charCodeAt(i + 1) - '1'.charCodeAt(0);
             frameData.highlights.push([column, row]);
         }
 
@@ -83,6 +85,65 @@ export class ChessViewerModule {
         return frameData;
     }
 
+    // Rebuilds the FEN of a frame from the FEN of the previous frame and the delta written by ViewEncoder:
+    // changed squares as a name followed by a piece or '.', optionally '/' and the new reserve, then the FEN fields after the board.
+    decodeDelta (previousFen, delta) {
+        // Expand previous board into one entry per square, rows from the 8th.
+        var rows = previousFen.split(' ')[0].split('/');
+        var squares = [];
+        for (var row = 0; row < Constants.Rows; row++) {
+            for (var c of rows[row]) {
+                if (c >= '1' && c <= '9')
+                    for (var i = 0; i < c.charCodeAt(0) - '0'.charCodeAt(0); i++) squares.push('');
+                else if (c == '~')
+                    squares[squares.length - 1] += c;
+                else
+                    squares.push(c);
+            }
+        }
+        var reserve = rows.length > Constants.Rows ? rows[Constants.Rows] : null;
+
+        // Apply changes.
+        var fieldsStart = delta.indexOf(' ');
+        var changes = delta.substring(0, fieldsStart);
+        var reserveStart = changes.indexOf('/');
+        if (reserveStart >= 0) {
+            reserve = changes.substring(reserveStart + 1);
+            changes = changes.substring(0, reserveStart);
+        }
+        for (var i = 0; i < changes.length;) {
+            var column = changes.charCodeAt(i) - 'a'.charCodeAt(0);
+            var row = changes.charCodeAt(i + 1) - '1'.charCodeAt(0);
+            var piece = changes[i + 2];
+            i += 3;
+            if (changes[i] == '~') {
+                piece += '~';
+                i++;
+            }
+            squares[(Constants.Rows - 1 - row) * Constants.Columns + column] = piece == '.' ? '' : piece;
+        }
+
+        // Write new board back as FEN.
+        var fen = '';
+        for (var row = 0; row < Constants.Rows; row++) {
+            var empty = 0;
+            for (var column = 0; column < Constants.Columns; column++) {
+                var piece = squares[row * Constants.Columns + column];
+                if (!piece) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) fen += empty;
+                empty = 0;
+                fen += piece;
+            }
+            if (empty > 0) fen += empty;
+            if (row < Constants.Rows - 1) fen += '/';
+        }
+        if (reserve !== null) fen += '/' + reserve;
+        return fen + delta.substring(fieldsStart);
+    }
+
     handleGlobalData (players, globalData) {
         this.players = players;
         this.globalData = globalData;
@@ -3,11 +3,20 @@ import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
 
+import cc.recursive.chess.Agent;
 import cc.recursive.chess.Board;
+import cc.recursive.chess.GameContext;
 import cc.recursive.chess.Move;
 
-public class RandomAgent {
+public class RandomAgent implements Agent {
     private static Scanner in;
+    private Random rng = new Random();
+
+    // In-process version of the loop below.
+    @Override
+    public Move play(Board board, List<Move> legalMoves, GameContext context) {
+        return legalMoves.get(rng.nextInt(legalMoves.size()));
+    }
 
     public static void main(String[] args) throws ParseException {
         in = new Scanner(System.in);
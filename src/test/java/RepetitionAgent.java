@@ -3,11 +3,27 @@ import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
 
+import cc.recursive.chess.Agent;
 import cc.recursive.chess.Board;
+import cc.recursive.chess.GameContext;
 import cc.recursive.chess.Move;
 
-public class RepetitionAgent {
+public class RepetitionAgent implements Agent {
     private static Scanner in;
+    private Random rng = new Random();
+    private Move repeatMove = null;
+
+    // In-process version of the loop below.
+    @Override
+    public Move play(Board board, List<Move> legalMoves, GameContext context) {
+        Move move;
+        if (repeatMove != null && legalMoves.contains(repeatMove))
+            move = repeatMove;
+        else
+            move = legalMoves.get(rng.nextInt(legalMoves.size()));
+        repeatMove = new Move(move.getTo(), move.getFrom());
+        return move;
+    }
 
     public static void main(String[] args) throws ParseException {
         in = new Scanner(System.in);
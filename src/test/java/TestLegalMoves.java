@@ -1,28 +1,12 @@
 import java.text.ParseException;
-import java.util.List;
 
 import cc.recursive.chess.Board;
-import cc.recursive.chess.Move;
+import cc.recursive.chess.Perft;
 
 public class TestLegalMoves {
-    private static int countLegalMoves(Board board, int depth) {
-        List<Move> moves = board.generateMoves();
-        if (depth == 1)
-            return moves.size();
-
-        int result = 0;
-        for (Move move : moves) {
-            Board newBoard = new Board(board);
-            newBoard.applyMoveUnsafe(move);
-            int count = countLegalMoves(newBoard, depth - 1);
-            result += count;
-        }
-        return result;
-    }
-
     private static void testPosition(String fen, int depth, int validCount) throws ParseException {
         Board board = new Board(fen, false);
-        int count = countLegalMoves(board, depth);
+        long count = Perft.perft(board, depth);
         if (count != validCount)
             System.out.println(String.format("Failed test for board '%s' depth %d: expected %d moves, got %d instead.", fen, depth, validCount, count));
     }
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.Random;
+
+import cc.recursive.chess.Board;
+import cc.recursive.chess.Color;
+import cc.recursive.chess.Game;
+import cc.recursive.chess.GameRecord;
+import cc.recursive.chess.GameResult;
+import cc.recursive.chess.MoveList;
+import cc.recursive.chess.PgnGame;
+import cc.recursive.chess.PgnReader;
+import cc.recursive.chess.PgnWriter;
+
+public class TestPgn {
+    private static final String[] StartFens = {
+        "r3k2r/p1pp1pb1/bn2Qnp1/2qPN3/1p2P3/2N5/PPPBBPPP/R3K2R b AHah - 3 2",
+        "r2qk2r/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2QK2R/PNBpnb w AHah - 0 7",
+    };
+    private static final int Games = 400;
+    private static int failures = 0;
+
+    // Random legal moves until the rules end the game, sometimes cut short by a resignation, with a comment on some plies.
+    private static GameRecord playRandomGame(Random random) throws ParseException {
+        boolean crazyHouse = random.nextBoolean();
+        Game game;
+        int start = random.nextInt(8);
+        if (start == 0)
+            game = new Game(StartFens[crazyHouse ? 1 : 0], crazyHouse);
+        else
+            game = new Game(start == 1 ? 0 : random.nextInt(960), crazyHouse);
+        int resignPly = random.nextInt(4) == 0 ? random.nextInt(200) : -1;
+        while (game.getGameResult() == GameResult.Undecided) {
+            if (game.getMoves().size() == resignPly) {
+                game.setGameResult(game.getBoard().getColorToPlay() == Color.White ? GameResult.WhiteResigns : GameResult.BlackResigns);
+                break;
+            }
+            MoveList moves = game.getBoard().getLegalMoves();
+            game.applyMoveTrusted(moves.get(random.nextInt(moves.size())));
+        }
+        GameRecord record = GameRecord.fromGame(game);
+        for (int ply = 0; ply < record.getPlyCount(); ply++) {
+            if (random.nextInt(10) == 0)
+                record.setComment(ply, "ply " + (ply + 1));
+        }
+        return record;
+    }
+
+    // Knights going back and forth until the start position occurs a third time, which random games hardly ever do.
+    private static GameRecord playRepetition() throws ParseException {
+        Game game = new Game(0, false);
+        String[] moves = { "Nf3", "Nf6", "Ng1", "Ng8", "Nf3", "Nf6", "Ng1", "Ng8" };
+        for (String san : moves)
+            game.applyMoveTrusted(game.getBoard().parseAlgebraicMove(san, 0, san.length()));
+        return GameRecord.fromGame(game);
+    }
+
+    // Same game started from a FEN rather than a seed, the form PGN gives back.
+    private static GameRecord withStartFen(GameRecord record) throws ParseException {
+        String fen = record.getStartFen() != null ? record.getStartFen() : record.getSeed() != 0 ? new Board(record.getSeed(), record.isCrazyHouse()).toFenString(false) : null;
+        if (fen != null)
+            fen = new Board(fen, record.isCrazyHouse()).toFenString(false);
+        int[] moves = new int[record.getPlyCount()];
+        for (int ply = 0; ply < moves.length; ply++)
+            moves[ply] = record.getMove(ply);
+        GameRecord result = new GameRecord(0, fen, record.isCrazyHouse(), moves, record.getResult());
+        for (int ply = 0; ply < moves.length; ply++) {
+            if (record.getComment(ply) != null)
+                result.setComment(ply, record.getComment(ply));
+        }
+        return result;
+    }
+
+    // FEN tag as other PGN tools expect it: eight rows, the crazyhouse reserve in brackets, KQkq castling rights for seeded starts.
+    private static boolean isPgnFen(String fen, boolean crazyHouse, boolean seeded) {
+        String[] fields = fen.split(" ");
+        String board = fields[0];
+        if (board.split("/").length != 8) return false;
+        if (crazyHouse != (board.indexOf('[') >= 0 && board.endsWith("]"))) return false;
+        return !seeded || fields[2].matches("K?Q?k?q?|-");
+    }
+
+    public static void main(String[] args) throws IOException, ParseException {
+        Random random = new Random(1);
+        GameRecord[] records = new GameRecord[Games];
+        StringWriter text = new StringWriter();
+        try (PgnWriter writer = new PgnWriter(text)) {
+            for (int i = 0; i < Games; i++) {
+                records[i] = i == 0 ? playRepetition() : playRandomGame(random);
+                writer.write(records[i], null);
+            }
+        }
+
+        try (PgnReader reader = new PgnReader(new StringReader(text.toString()))) {
+            for (int i = 0; i < Games; i++) {
+                PgnGame game = reader.next();
+                if (i == 0 && records[i].getResult() != GameResult.Repetition && failures++ < 10)
+                    System.out.println(String.format("Failed test: knight moves ended by %s instead of a repetition.", records[i].getResult()));
+                GameRecord expected = withStartFen(records[i]), actual = game != null ? withStartFen(game.toRecord()) : null;
+                String fen = game != null ? game.getTag("FEN") : null;
+                if (fen != null && !isPgnFen(fen, records[i].isCrazyHouse(), records[i].getStartFen() == null) && failures++ < 10)
+                    System.out.println(String.format("Failed test for game %d: FEN tag '%s' is not in PGN form.", i + 1, fen));
+                if (!expected.equals(actual) && failures++ < 10)
+                    System.out.println(String.format("Failed test for game %d: read back differently, expected result %s, got %s.", i + 1, expected.getResult(), actual != null ? actual.getResult() : null));
+            }
+            if (reader.next() != null && failures++ < 10)
+                System.out.println("Failed test: more games read than written.");
+        }
+        System.out.println(failures == 0 ? "Done testing" : String.format("Done testing, %d failures", failures));
+    }
+}
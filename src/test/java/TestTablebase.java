@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.text.ParseException;
+
+import cc.recursive.chess.Board;
+import cc.recursive.chess.Color;
+import cc.recursive.chess.MoveList;
+import cc.recursive.chess.Tablebase;
+import cc.recursive.chess.TablebaseGenerator;
+
+public class TestTablebase {
+    private static Tablebase tablebase = new Tablebase(null);
+    private static int failures = 0;
+
+    // Entry of a position from its successors, searching further where en-passant rights keep them out of the tables.
+    private static int negamax(Board board, boolean root) {
+        int entry = root ? Tablebase.Missing : tablebase.probe(board);
+        if (entry != Tablebase.Missing) return entry;
+        MoveList moves = board.getLegalMoves();
+        if (moves.isEmpty()) return board.isKingAttacked(board.getColorToPlay()) ? Tablebase.toLoss(0) : 0;
+        int shortestWin = Integer.MAX_VALUE, longestLoss = -1;
+        boolean draw = false;
+        for (int i = 0; i < moves.size(); i++) {
+            Board child = new Board(board);
+            child.applyMoveUnsafe(moves.get(i));
+            int result = negamax(child, false);
+            if (result == 0) draw = true;
+            else if (result < 0) shortestWin = Math.min(shortestWin, Tablebase.getDistanceToMate(result) + 1);
+            else longestLoss = Math.max(longestLoss, Tablebase.getDistanceToMate(result) + 1);
+        }
+        if (shortestWin != Integer.MAX_VALUE) return Tablebase.toWin(shortestWin);
+        return draw ? 0 : Tablebase.toLoss(longestLoss);
+    }
+
+    private static void testPosition(String fen) throws ParseException {
+        Board board = new Board(fen, false);
+        int entry = tablebase.probe(board), expected = negamax(board, true);
+        if (entry != expected && failures++ < 10)
+            System.out.println(String.format("Failed test for board '%s': expected entry %d, got %d instead.", fen, expected, entry));
+    }
+
+    private static String toFen(char[] cells, Color colorToPlay) {
+        StringBuilder fen = new StringBuilder();
+        for (int row = 7; row >= 0; row--) {
+            int empty = 0;
+            for (int column = 0; column < 8; column++) {
+                char c = cells[row * 8 + column];
+                if (c == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) fen.append(empty);
+                empty = 0;
+                fen.append(c);
+            }
+            if (empty > 0) fen.append(empty);
+            if (row > 0) fen.append('/');
+        }
+        return fen.append(colorToPlay == Color.White ? " w - - 0 1" : " b - - 0 1").toString();
+    }
+
+    // Every KPvKP position where a double push lands beside the enemy pawn, which the tables must value with the en-passant reply.
+    private static void testDoublePushes() throws ParseException {
+        for (Color color : Color.values()) {
+            int pawnRow = color == Color.White ? 1 : 6, landingRow = color == Color.White ? 3 : 4;
+            for (int column = 0; column < 8; column++) {
+                for (int enemyColumn = column - 1; enemyColumn <= column + 1; enemyColumn += 2) {
+                    if (enemyColumn < 0 || enemyColumn >= 8) continue;
+                    for (int king = 0; king < 64; king++) {
+                        for (int enemyKing = 0; enemyKing < 64; enemyKing++) {
+                            char[] cells = new char[64];
+                            int pawn = pawnRow * 8 + column, enemyPawn = landingRow * 8 + enemyColumn;
+                            if (king == pawn || king == enemyPawn || enemyKing == pawn || enemyKing == enemyPawn || king == enemyKing) continue;
+                            cells[pawn] = color == Color.White ? 'P' : 'p';
+                            cells[enemyPawn] = color == Color.White ? 'p' : 'P';
+                            cells[king] = color == Color.White ? 'K' : 'k';
+                            cells[enemyKing] = color == Color.White ? 'k' : 'K';
+                            Board board = new Board(toFen(cells, color), false);
+                            if (board.isKingAttacked(color.opposite())) continue;
+                            testPosition(board.toFenString(false));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ParseException {
+        TablebaseGenerator generator = new TablebaseGenerator(tablebase, Runtime.getRuntime().availableProcessors());
+        generator.generate("KPvKP");
+        generator.shutdown();
+
+        // Stored as a white win before en-passant replies were generated, a4 bxa3 draws.
+        testPosition("8/8/8/8/1p6/6k1/P7/K7 w - - 0 1");
+        testDoublePushes();
+        System.out.println(failures == 0 ? "Done testing" : String.format("Done testing, %d failures", failures));
+    }
+}